@@ -0,0 +1,118 @@
+package com.example.demo.benchmarks;
+
+import com.example.demo.config.LoginProperties;
+import com.example.demo.config.TokenProperties;
+import com.example.demo.entities.User;
+import com.example.demo.filter.TokenAuthenticationFilter;
+import com.example.demo.repositories.UserRepository;
+import com.example.demo.services.AuthService;
+import com.example.demo.services.InMemoryTokenStore;
+import com.example.demo.services.LoginThrottle;
+import com.example.demo.services.SignedTokenStore;
+import com.example.demo.services.TokenRevocationStore;
+import com.example.demo.services.TokenStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Authentication paths for both token modes: login with password verification, resolving a token
+ * and the per-request cost of {@link TokenAuthenticationFilter} in front of a no-op chain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthBenchmark {
+    private static final String LOGIN = "user@gmail.com";
+    private static final String PASSWORD = "user";
+    private static final FilterChain NO_OP_CHAIN = (request, response) -> { };
+
+    @Param({"OPAQUE", "SIGNED"})
+    private TokenProperties.Mode mode;
+
+    private AuthService authService;
+    private TokenAuthenticationFilter filter;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+        User user = new User();
+        user.setId(1);
+        user.setLogin(LOGIN);
+        user.setPassword(passwordEncoder.encode(PASSWORD));
+        UserRepository userRepository = mock(UserRepository.class, withSettings().stubOnly());
+        when(userRepository.findByLogin(LOGIN)).thenReturn(Optional.of(user));
+        when(userRepository.getReferenceById(1)).thenReturn(user);
+
+        // budgets far above what a benchmark iteration uses, only the hashing pool applies
+        LoginThrottle loginThrottle = new LoginThrottle(new LoginProperties(
+                Runtime.getRuntime().availableProcessors(), 64, 10, Integer.MAX_VALUE, Integer.MAX_VALUE, Duration.ofMinutes(1)));
+        authService = new AuthService(userRepository, passwordEncoder, tokenStore(userRepository), loginThrottle, new SimpleMeterRegistry());
+        filter = new TokenAuthenticationFilter(authService);
+        token = authService.login(LOGIN, PASSWORD, "127.0.0.1");
+        request = new MockHttpServletRequest("GET", "/list");
+        request.addHeader("auth-token", "Bearer " + token);
+        response = new MockHttpServletResponse();
+    }
+
+    @TearDown
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public String login() {
+        return authService.login(LOGIN, PASSWORD, "127.0.0.1");
+    }
+
+    @Benchmark
+    public User findUser() {
+        return authService.findUser(token);
+    }
+
+    @Benchmark
+    public void filter() throws ServletException, IOException {
+        filter.doFilter(request, response, NO_OP_CHAIN);
+    }
+
+    private TokenStore tokenStore(UserRepository userRepository) {
+        TokenProperties properties = new TokenProperties(mode, "benchmark-secret-benchmark-secret",
+                Duration.ofHours(12), Duration.ofMinutes(30), 100_000);
+        if (mode == TokenProperties.Mode.OPAQUE) {
+            return new InMemoryTokenStore(properties);
+        }
+        return new SignedTokenStore(properties, new TokenRevocationStore() {
+            @Override
+            public void revoke(String tokenId, Instant expiresAt) {
+            }
+
+            @Override
+            public boolean isRevoked(String tokenId) {
+                return false;
+            }
+        }, userRepository, Clock.systemUTC());
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.demo.benchmarks;
+
+import com.example.demo.controller.CloudController;
+import com.example.demo.entities.Blob;
+import com.example.demo.entities.File;
+import com.example.demo.entities.User;
+import com.example.demo.repositories.FileRepository;
+import com.example.demo.services.AuthService;
+import com.example.demo.services.ChunkedUploadService;
+import com.example.demo.services.FileService;
+import com.example.demo.services.TransferMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.method.annotation.AuthenticationPrincipalArgumentResolver;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * GET /file through the MVC stack with a stubbed {@link FileService}: conditional request checks,
+ * header setup and copying the content into the response, whole or as a single range. With
+ * {@code cached} the content comes from a direct buffer as the content cache hands it out, otherwise
+ * from the file.
+ * MockMvc buffers the response body, so the allocation rate includes one copy of the served bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DownloadBenchmark {
+    private static final String RANGE = "bytes=0-65535";
+
+    @Param({"4096", "1048576", "16777216"})
+    private int size;
+
+    @Param({"false", "true"})
+    private boolean cached;
+
+    private MockMvc mockMvc;
+    private Path content;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        content = Files.createTempFile("download-benchmark", ".bin");
+        Files.write(content, bytes);
+
+        User user = new User();
+        user.setId(1);
+        Blob blob = new Blob();
+        blob.setDigest("0".repeat(64));
+        blob.setSize(size);
+        blob.setStoredSize(size);
+        File file = new File();
+        file.setFilename("bench.bin");
+        file.setCreatedAt(Instant.now());
+        file.setSize(size);
+        file.setBlob(blob);
+
+        FileService fileService = mock(FileService.class, withSettings().stubOnly());
+        when(fileService.findByUserAndFilename(any(), anyString())).thenReturn(Optional.of(file));
+        when(fileService.storedContent(any(), any())).thenReturn(new FileSystemResource(content));
+        if (cached) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(size).put(bytes).flip();
+            when(fileService.cachedContent(any())).thenAnswer(invocation -> buffer.asReadOnlyBuffer());
+        }
+        CloudController controller = new CloudController(mock(AuthService.class), fileService,
+                mock(ChunkedUploadService.class), mock(FileRepository.class), new TransferMetrics(new SimpleMeterRegistry()));
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setCustomArgumentResolvers(new AuthenticationPrincipalArgumentResolver())
+                .build();
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated(user, null, List.of()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        SecurityContextHolder.clearContext();
+        Files.deleteIfExists(content);
+    }
+
+    @Benchmark
+    public int download() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(get("/file").param("filename", "bench.bin"))
+                .andReturn().getResponse();
+        return response.getContentAsByteArray().length;
+    }
+
+    @Benchmark
+    public int downloadRange() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(get("/file").param("filename", "bench.bin")
+                        .header(HttpHeaders.RANGE, RANGE))
+                .andReturn().getResponse();
+        return response.getContentAsByteArray().length;
+    }
+}
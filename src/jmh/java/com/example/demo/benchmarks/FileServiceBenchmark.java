@@ -0,0 +1,138 @@
+package com.example.demo.benchmarks;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.example.demo.config.CompressionProperties;
+import com.example.demo.config.ContentCacheProperties;
+import com.example.demo.config.MetadataCacheProperties;
+import com.example.demo.config.QuotaProperties;
+import com.example.demo.config.StorageProperties;
+import com.example.demo.entities.Blob;
+import com.example.demo.entities.User;
+import com.example.demo.repositories.BlobRepository;
+import com.example.demo.repositories.FileRepository;
+import com.example.demo.repositories.StorageIntentRepository;
+import com.example.demo.repositories.UserRepository;
+import com.example.demo.services.BlobContentCache;
+import com.example.demo.services.BlobStore;
+import com.example.demo.services.CompressionPolicy;
+import com.example.demo.services.FileMetadataCache;
+import com.example.demo.services.FileService;
+import com.example.demo.services.LocalStorageBackend;
+import com.example.demo.services.QuotaService;
+import com.example.demo.services.StorageBackend;
+import com.example.demo.services.TransferMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * {@link FileService#addNewFile} against stubbed repositories: hashing, spooling to the temp file
+ * and moving it into the blob store. With {@code duplicate} the content is already known and
+ * only costs a reference count update instead of the move. {@code csv} content is gzipped on the
+ * way, random bytes are stored as they are.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileServiceBenchmark {
+    @Param({"4096", "1048576", "16777216"})
+    private int size;
+
+    @Param({"false", "true"})
+    private boolean duplicate;
+
+    @Param({"random", "csv"})
+    private String content;
+
+    private FileService fileService;
+    private StorageBackend storage;
+    private MockMultipartFile file;
+    private String digest;
+    private User user;
+
+    @Setup
+    public void setUp() throws NoSuchAlgorithmException {
+        ((Logger) LoggerFactory.getLogger(FileService.class)).setLevel(Level.INFO);
+
+        FileRepository fileRepository = mock(FileRepository.class, withSettings().stubOnly());
+        BlobRepository blobRepository = mock(BlobRepository.class, withSettings().stubOnly());
+        when(blobRepository.incrementRefCount(anyString())).thenReturn(duplicate ? 1 : 0);
+        when(blobRepository.getReferenceById(anyString())).thenAnswer(invocation -> blob(invocation.getArgument(0)));
+        storage = new LocalStorageBackend(new StorageProperties.Local(List.of(Paths.get("file-storage")), 64));
+        BlobStore blobStore = new BlobStore(blobRepository, new CompressionPolicy(
+                new CompressionProperties(true, DataSize.ofKilobytes(64), 0.8, 1)),
+                new BlobContentCache(new ContentCacheProperties(true, DataSize.ofKilobytes(256), DataSize.ofMegabytes(64)),
+                        new SimpleMeterRegistry()), storage,
+                TransactionOperations.withoutTransaction());
+        UserRepository userRepository = mock(UserRepository.class, withSettings().stubOnly());
+        when(userRepository.reserveBytes(anyInt(), anyLong(), anyLong())).thenReturn(1);
+        fileService = new FileService(fileRepository, blobStore, storage,
+                new QuotaService(userRepository, new QuotaProperties(DataSize.ofGigabytes(10))),
+                new TransferMetrics(new SimpleMeterRegistry()),
+                new FileMetadataCache(new MetadataCacheProperties(10_000, Duration.ofMinutes(1)), new SimpleMeterRegistry()),
+                mock(StorageIntentRepository.class, withSettings().stubOnly()));
+
+        byte[] bytes = content.equals("csv") ? csv(size) : random(size);
+        file = new MockMultipartFile("file", "bench." + content, "application/octet-stream", bytes);
+        digest = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        user = new User();
+        user.setId(1);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        storage.delete(BlobStore.key(blob(digest)));
+    }
+
+    @Benchmark
+    public void addNewFile() {
+        fileService.addNewFile(file.getOriginalFilename(), file, user);
+    }
+
+    private static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] csv(int size) {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder(size + 64);
+        while (csv.length() < size) {
+            csv.append(random.nextInt(100_000)).append(",user-").append(random.nextInt(1000))
+                    .append(",").append(random.nextDouble()).append(",ok\n");
+        }
+        return csv.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static Blob blob(String digest) {
+        Blob blob = new Blob();
+        blob.setDigest(digest);
+        return blob;
+    }
+}
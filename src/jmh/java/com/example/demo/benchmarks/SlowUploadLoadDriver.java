@@ -0,0 +1,179 @@
+package com.example.demo.benchmarks;
+
+import com.example.demo.controller.CloudController;
+import com.example.demo.repositories.FileRepository;
+import com.example.demo.services.AuthService;
+import com.example.demo.services.ChunkedUploadService;
+import com.example.demo.services.FileService;
+import com.example.demo.services.TransferMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.MultipartConfigElement;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.web.method.annotation.AuthenticationPrincipalArgumentResolver;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Load test for slow clients: many concurrent POST /file uploads whose bodies trickle in over about
+ * a second, against an embedded Tomcat serving {@link CloudController} with a stubbed
+ * {@link FileService}. Runs once with Tomcat's default pool of 200 platform threads and once with
+ * virtual threads, and prints wall time and peak platform thread count of both.
+ * <p>
+ * The number of clients is the first argument, 2000 by default. Run it on JDK 24 or later: before
+ * that Tomcat's blocking socket reads wait on a monitor, which pins the carrier thread, and once
+ * jdk.virtualThreadScheduler.maxPoolSize (256) uploads are pinned the virtual threads run stalls.
+ */
+public final class SlowUploadLoadDriver {
+    private static final String BOUNDARY = "load-test-boundary";
+    private static final int BODY_CHUNKS = 10;
+    private static final int CHUNK_SIZE = 1024;
+    private static final Duration CHUNK_DELAY = Duration.ofMillis(100);
+
+    private SlowUploadLoadDriver() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        System.out.printf("Java %s, %d clients, each sending %d bytes in %d chunks %d ms apart%n",
+                Runtime.version(), clients, BODY_CHUNKS * CHUNK_SIZE, BODY_CHUNKS, CHUNK_DELAY.toMillis());
+        for (boolean virtualThreads : new boolean[]{false, true}) {
+            run(virtualThreads, clients);
+        }
+    }
+
+    private static void run(boolean virtualThreads, int clients) throws Exception {
+        Tomcat tomcat = startServer(virtualThreads);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        try {
+            int port = tomcat.getConnector().getLocalPort();
+            threads.resetPeakThreadCount();
+            long start = System.nanoTime();
+            int succeeded = 0;
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<Boolean>> uploads = new ArrayList<>(clients);
+                for (int i = 0; i < clients; i++) {
+                    String filename = "file-" + i;
+                    uploads.add(executor.submit(() -> upload(port, filename)));
+                }
+                for (Future<Boolean> upload : uploads) {
+                    if (upload.get()) {
+                        succeeded++;
+                    }
+                }
+            }
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            System.out.printf("%-16s %5d/%d ok in %6d ms, peak platform threads %d%n",
+                    virtualThreads ? "virtual threads" : "platform threads",
+                    succeeded, clients, elapsed.toMillis(), threads.getPeakThreadCount());
+        } finally {
+            tomcat.stop();
+            tomcat.destroy();
+        }
+    }
+
+    private static boolean upload(int port, String filename) throws IOException, InterruptedException {
+        byte[] part = ("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] end = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        int contentLength = part.length + BODY_CHUNKS * CHUNK_SIZE + end.length;
+        byte[] head = ("POST /file?filename=" + filename + " HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n"
+                + "Content-Length: " + contentLength + "\r\n"
+                + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout((int) Duration.ofMinutes(5).toMillis());
+            OutputStream out = socket.getOutputStream();
+            out.write(head);
+            out.write(part);
+            out.flush();
+            byte[] chunk = new byte[CHUNK_SIZE];
+            for (int i = 0; i < BODY_CHUNKS; i++) {
+                Thread.sleep(CHUNK_DELAY);
+                out.write(chunk);
+                out.flush();
+            }
+            out.write(end);
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            String statusLine = in.readLine();
+            return statusLine != null && statusLine.startsWith("HTTP/1.1 200");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static Tomcat startServer(boolean virtualThreads) throws IOException, LifecycleException {
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("load-test-tomcat").toString());
+        tomcat.setPort(0);
+        Connector connector = tomcat.getConnector();
+        if (virtualThreads) {
+            // what spring.threads.virtual.enabled configures for the application's Tomcat
+            connector.getProtocolHandler().setExecutor(new VirtualThreadExecutor("tomcat-handler-"));
+        }
+
+        AnnotationConfigWebApplicationContext webContext = new AnnotationConfigWebApplicationContext();
+        webContext.register(WebMvcConfiguration.class);
+        Context context = tomcat.addContext("", null);
+        Wrapper dispatcher = Tomcat.addServlet(context, "dispatcher", new DispatcherServlet(webContext));
+        dispatcher.setMultipartConfigElement(new MultipartConfigElement(""));
+        dispatcher.setLoadOnStartup(1);
+        context.addServletMappingDecoded("/", "dispatcher");
+        tomcat.start();
+        return tomcat;
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @EnableWebMvc
+    static class WebMvcConfiguration implements WebMvcConfigurer {
+        @Bean
+        CloudController cloudController() {
+            return new CloudController(mock(AuthService.class), mock(FileService.class, withSettings().stubOnly()),
+                    mock(ChunkedUploadService.class), mock(FileRepository.class), new TransferMetrics(new SimpleMeterRegistry()));
+        }
+
+        @Bean
+        MultipartResolver multipartResolver() {
+            return new StandardServletMultipartResolver();
+        }
+
+        @Override
+        public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+            resolvers.add(new AuthenticationPrincipalArgumentResolver());
+        }
+    }
+}
@@ -2,10 +2,24 @@ package com.example.demo;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(scanBasePackages = "com.example.demo")
+@EnableScheduling
+@ConfigurationPropertiesScan
 public class CloudApplication {
+    /**
+     * Turns on spring.threads.virtual.enabled. Only from JDK 24 on (JEP 491) does a virtual thread
+     * blocked in a synchronized block release its carrier, on older JDKs the server can stall.
+     */
+    static final String VIRTUAL_THREADS_PROFILE = "virtual-threads";
+
     public static void main(String[] args) {
-        SpringApplication.run(CloudApplication.class, args);
+        SpringApplication application = new SpringApplication(CloudApplication.class);
+        if (Runtime.version().feature() >= 24) {
+            application.setAdditionalProfiles(VIRTUAL_THREADS_PROFILE);
+        }
+        application.run(args);
     }
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Compression of stored content.
+ *
+ * @param enabled    compress new blobs whose content is compressible, existing blobs are never rewritten
+ * @param sampleSize how much of the start of the content is looked at to decide
+ * @param maxRatio   content of unknown type is compressed when its sample shrinks to at most this fraction
+ * @param level      deflate level from 1 (fastest) to 9 (smallest), compression runs while the upload streams in
+ */
+@ConfigurationProperties(prefix = "storage.compression")
+public record CompressionProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("64KB") DataSize sampleSize,
+        @DefaultValue("0.8") double maxRatio,
+        @DefaultValue("1") int level) {
+}
@@ -0,0 +1,20 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * In-memory cache of the stored bytes of small blobs, kept outside the Java heap.
+ *
+ * @param enabled     serve small blobs from memory instead of reading them from disk on every download
+ * @param maxFileSize blobs whose stored size is above this are always read from disk
+ * @param maxSize     total bytes held, must fit into the JVM's direct memory limit (-XX:MaxDirectMemorySize,
+ *                    by default the maximum heap size) next to what Tomcat and NIO use
+ */
+@ConfigurationProperties(prefix = "storage.content-cache")
+public record ContentCacheProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("256KB") DataSize maxFileSize,
+        @DefaultValue("64MB") DataSize maxSize) {
+}
@@ -0,0 +1,22 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Background removal of deleted files, see {@link com.example.demo.services.DeletionPipeline}.
+ *
+ * @param undeleteWindow    how long a deleted file can be restored before it is purged
+ * @param batchSize         files purged per statement, their content is deleted in parallel
+ * @param maxFilesPerSecond upper bound on purged files per second, keeps a mass delete from saturating the disks
+ * @param pollInterval      pause between checks while nothing is due
+ */
+@ConfigurationProperties(prefix = "storage.deletion")
+public record DeletionProperties(
+        @DefaultValue("15m") Duration undeleteWindow,
+        @DefaultValue("200") int batchSize,
+        @DefaultValue("1000") int maxFilesPerSecond,
+        @DefaultValue("10s") Duration pollInterval) {
+}
@@ -0,0 +1,69 @@
+package com.example.demo.config;
+
+import com.example.demo.dto.FileListItem;
+import com.example.demo.dto.FilePage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Writes a {@link FilePage} as a JSON array of its items straight to the response with Jackson's
+ * streaming generator, without building an intermediate tree or going through reflection.
+ */
+public class FilePageHttpMessageConverter extends AbstractHttpMessageConverter<FilePage> {
+    private final JsonFactory jsonFactory = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    public FilePageHttpMessageConverter() {
+        super(MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return FilePage.class == clazz;
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected FilePage readInternal(Class<? extends FilePage> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("FilePage is write-only", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(FilePage page, HttpOutputMessage outputMessage) throws IOException {
+        try (JsonGenerator generator = jsonFactory.createGenerator(outputMessage.getBody())) {
+            generator.writeStartArray();
+            for (FileListItem item : page.files()) {
+                generator.writeStartObject();
+                generator.writeNumberField("id", item.id());
+                generator.writeStringField("filename", item.filename());
+                generator.writeNumberField("size", item.size());
+                writeInstant(generator, "createdAt", item.createdAt());
+                writeInstant(generator, "updatedAt", item.updatedAt());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private static void writeInstant(JsonGenerator generator, String name, Instant value) throws IOException {
+        if (value == null) {
+            generator.writeNullField(name);
+        } else {
+            generator.writeStringField(name, value.toString());
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Repair of storage operations that were interrupted, see {@link com.example.demo.services.StorageReconciler}.
+ *
+ * @param gracePeriod how old an open journal entry must be before its operation counts as interrupted;
+ *                    it has to be longer than hashing the largest upload takes
+ * @param batchSize   journal entries repaired per batch
+ */
+@ConfigurationProperties(prefix = "storage.journal")
+public record JournalProperties(
+        @DefaultValue("1h") Duration gracePeriod,
+        @DefaultValue("500") int batchSize) {
+}
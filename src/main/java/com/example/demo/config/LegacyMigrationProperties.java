@@ -0,0 +1,18 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Background move of files stored under their owner and name into the blob store.
+ *
+ * @param enabled   run the migration once the application is ready
+ * @param threads   files moved concurrently, this bounds the disk bandwidth the migration takes
+ * @param batchSize files read from the database per batch
+ */
+@ConfigurationProperties(prefix = "storage.legacy-migration")
+public record LegacyMigrationProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("4") int threads,
+        @DefaultValue("200") int batchSize) {
+}
@@ -0,0 +1,26 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Login hashing and throttling.
+ *
+ * @param threads            threads that verify and hash passwords, this bounds the cores logins can take
+ * @param queueSize          logins waiting for a hashing thread, more are rejected with 429 right away
+ * @param bcryptStrength     target BCrypt cost, weaker hashes are upgraded on the next successful login
+ * @param attemptsPerLogin   login attempts per window for one login name
+ * @param attemptsPerAddress login attempts per window from one client address
+ * @param window             period in which the attempt budgets refill completely
+ */
+@ConfigurationProperties(prefix = "auth.login")
+public record LoginProperties(
+        @DefaultValue("2") int threads,
+        @DefaultValue("64") int queueSize,
+        @DefaultValue("10") int bcryptStrength,
+        @DefaultValue("10") int attemptsPerLogin,
+        @DefaultValue("30") int attemptsPerAddress,
+        @DefaultValue("1m") Duration window) {
+}
@@ -0,0 +1,19 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Cache of file rows looked up by owner and filename.
+ *
+ * @param maximumSize number of file rows kept, the least valuable ones are evicted first
+ * @param ttl         how long a cached row is used, this bounds how stale it can be after a change made
+ *                    by another instance, changes on this instance invalidate it right away
+ */
+@ConfigurationProperties(prefix = "storage.metadata-cache")
+public record MetadataCacheProperties(
+        @DefaultValue("10000") long maximumSize,
+        @DefaultValue("1m") Duration ttl) {
+}
@@ -0,0 +1,14 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Per-user storage quotas.
+ *
+ * @param defaultLimit how much a user may store unless the users row sets its own quota_bytes
+ */
+@ConfigurationProperties(prefix = "storage.quota")
+public record QuotaProperties(@DefaultValue("10GB") DataSize defaultLimit) {
+}
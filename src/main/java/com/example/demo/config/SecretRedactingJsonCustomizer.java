@@ -0,0 +1,31 @@
+package com.example.demo.config;
+
+import org.springframework.boot.json.JsonWriter;
+import org.springframework.boot.logging.structured.StructuredLoggingJsonMembersCustomizer;
+
+import java.util.regex.Pattern;
+
+/**
+ * Masks credentials in every string of a structured log event, the message as well as stack traces:
+ * bearer tokens, auth-token headers and password, secret or token assignments.
+ */
+public class SecretRedactingJsonCustomizer implements StructuredLoggingJsonMembersCustomizer<Object> {
+    static final String REDACTED = "[REDACTED]";
+
+    private static final Pattern BEARER = Pattern.compile("(?i)(bearer\\s+)[\\w.~+/=-]+");
+    private static final Pattern ASSIGNMENT = Pattern.compile(
+            "(?i)((?:password|secret|auth-token|token)[\"']?\\s*[:=]\\s*[\"']?(?:bearer\\s+)?)[^\\s\"',;&}]+");
+
+    @Override
+    public void customize(JsonWriter.Members<Object> members) {
+        members.applyingValueProcessor(JsonWriter.ValueProcessor.of(String.class, SecretRedactingJsonCustomizer::redact));
+    }
+
+    public static String redact(String value) {
+        if (value == null) {
+            return null;
+        }
+        String redacted = BEARER.matcher(value).replaceAll("$1" + REDACTED);
+        return ASSIGNMENT.matcher(redacted).replaceAll("$1" + REDACTED);
+    }
+}
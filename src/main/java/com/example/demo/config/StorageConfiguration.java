@@ -0,0 +1,51 @@
+package com.example.demo.config;
+
+import com.example.demo.services.LocalStorageBackend;
+import com.example.demo.services.S3StorageBackend;
+import com.example.demo.services.StorageBackend;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.core.checksums.ResponseChecksumValidation;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+@Configuration
+public class StorageConfiguration {
+
+    @Bean
+    public StorageBackend storageBackend(StorageProperties storageProperties, ObjectProvider<S3Client> s3Client) {
+        return switch (storageProperties.type()) {
+            case LOCAL -> new LocalStorageBackend(storageProperties.local(), storageProperties.spoolDirectory());
+            case S3 -> new S3StorageBackend(s3Client.getObject(), storageProperties.s3().bucket(),
+                    storageProperties.spoolDirectory());
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "storage.backend", name = "type", havingValue = "s3")
+    public S3Client s3Client(StorageProperties storageProperties) {
+        StorageProperties.S3 s3 = storageProperties.s3();
+        AwsCredentialsProvider credentials = s3.accessKey() == null || s3.accessKey().isBlank()
+                ? DefaultCredentialsProvider.create()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(s3.accessKey(), s3.secretKey()));
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(s3.region()))
+                .credentialsProvider(credentials)
+                .forcePathStyle(s3.pathStyle())
+                // S3-compatible stores do not all support the checksums newer SDKs send by default
+                .requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+                .responseChecksumValidation(ResponseChecksumValidation.WHEN_REQUIRED);
+        if (s3.endpoint() != null) {
+            builder.endpointOverride(s3.endpoint());
+        }
+        return builder.build();
+    }
+}
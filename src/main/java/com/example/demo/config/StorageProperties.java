@@ -0,0 +1,60 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Where file content is stored.
+ *
+ * @param type           {@code local} keeps content on local disks, {@code s3} in a bucket of an S3-compatible object store
+ * @param local          settings of the local backend
+ * @param s3             settings of the S3 backend
+ * @param spoolDirectory where uploads are written until their key is known. By default the local backend
+ *                       spools into a .spool directory on each root, so content usually moves into place
+ *                       on the same disk, and the S3 backend into the system temp directory
+ */
+@ConfigurationProperties(prefix = "storage.backend")
+public record StorageProperties(
+        @DefaultValue("local") Type type,
+        @DefaultValue Local local,
+        @DefaultValue S3 s3,
+        Path spoolDirectory) {
+
+    public enum Type {
+        LOCAL,
+        S3
+    }
+
+    /**
+     * @param roots        directories content is spread across, typically one per disk. Keys are assigned
+     *                     by consistent hashing, so adding a root only reassigns a share of them; content
+     *                     that is still on its previous root is found there until it is moved
+     * @param virtualNodes points per root on the hash ring, more of them spread keys more evenly
+     */
+    public record Local(
+            @DefaultValue("file-storage") List<Path> roots,
+            @DefaultValue("64") int virtualNodes) {
+    }
+
+    /**
+     * @param endpoint  URL of the object store, leave empty for AWS S3 itself
+     * @param region    region of the bucket, S3-compatible stores usually accept any
+     * @param bucket    bucket holding the content
+     * @param accessKey access key, the default AWS credential chain is used when empty
+     * @param secretKey secret key belonging to the access key
+     * @param pathStyle address the bucket in the path instead of the host name, as MinIO and most
+     *                  other S3-compatible stores expect
+     */
+    public record S3(
+            URI endpoint,
+            @DefaultValue("us-east-1") String region,
+            String bucket,
+            String accessKey,
+            String secretKey,
+            @DefaultValue("true") boolean pathStyle) {
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Auth token settings.
+ *
+ * @param mode        {@code opaque} keeps tokens in process memory, {@code signed} issues self-contained
+ *                    HMAC-signed tokens that any instance can verify without shared state
+ * @param secret      HMAC key of signed tokens, at least 32 bytes, identical on all instances
+ * @param ttl         maximum lifetime of a token since login
+ * @param idleTimeout an opaque token not used for this long expires early
+ * @param maximumSize upper bound of opaque tokens kept in memory, the least valuable ones are evicted first
+ */
+@ConfigurationProperties(prefix = "auth.token")
+public record TokenProperties(
+        @DefaultValue("opaque") Mode mode,
+        String secret,
+        @DefaultValue("12h") Duration ttl,
+        @DefaultValue("30m") Duration idleTimeout,
+        @DefaultValue("100000") long maximumSize) {
+
+    public enum Mode {
+        OPAQUE,
+        SIGNED
+    }
+}
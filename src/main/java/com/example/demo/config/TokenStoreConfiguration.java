@@ -0,0 +1,55 @@
+package com.example.demo.config;
+
+import com.example.demo.repositories.RevokedTokenRepository;
+import com.example.demo.repositories.UserRepository;
+import com.example.demo.services.InMemoryTokenStore;
+import com.example.demo.services.JpaTokenRevocationStore;
+import com.example.demo.services.SignedTokenStore;
+import com.example.demo.services.TokenRevocationStore;
+import com.example.demo.services.TokenStore;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+@Configuration
+public class TokenStoreConfiguration {
+
+    @Bean
+    public TokenStore tokenStore(TokenProperties tokenProperties, ObjectProvider<TokenRevocationStore> revocationStore,
+                                 UserRepository userRepository) {
+        return switch (tokenProperties.mode()) {
+            case OPAQUE -> new InMemoryTokenStore(tokenProperties);
+            case SIGNED -> new SignedTokenStore(tokenProperties, revocationStore.getObject(), userRepository,
+                    Clock.systemUTC());
+        };
+    }
+
+    /**
+     * Number of active opaque tokens as auth.tokens.active. Signed tokens are not kept anywhere, so there is nothing to count.
+     */
+    @Bean
+    public MeterBinder activeTokensMetrics(TokenStore tokenStore) {
+        return registry -> {
+            if (tokenStore instanceof InMemoryTokenStore store) {
+                Gauge.builder("auth.tokens.active", store, InMemoryTokenStore::activeCount).register(registry);
+            }
+        };
+    }
+
+    /**
+     * Database-backed revocation list of signed tokens, replace it with another
+     * {@link TokenRevocationStore} bean to keep revocations elsewhere.
+     */
+    @Bean
+    @ConditionalOnMissingBean(TokenRevocationStore.class)
+    @ConditionalOnProperty(prefix = "auth.token", name = "mode", havingValue = "signed")
+    public JpaTokenRevocationStore tokenRevocationStore(RevokedTokenRepository revokedTokenRepository) {
+        return new JpaTokenRevocationStore(revokedTokenRepository, Clock.systemUTC());
+    }
+}
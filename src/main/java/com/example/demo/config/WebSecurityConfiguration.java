@@ -1,9 +1,11 @@
 package com.example.demo.config;
 
 import com.example.demo.filter.TokenAuthenticationFilter;
+import com.example.demo.filter.UploadQuotaFilter;
 import com.example.demo.entities.User;
 import com.example.demo.repositories.UserRepository;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.Customizer;
@@ -14,11 +16,14 @@ import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.access.AccessDeniedHandler;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import java.util.Map;
+
 @Configuration
 @EnableWebSecurity
 public class WebSecurityConfiguration {
@@ -28,9 +33,16 @@ public class WebSecurityConfiguration {
         this.userRepository = userRepository;
     }
 
+    /**
+     * New hashes are {bcrypt} at the configured cost. Hashes stored without an id prefix are
+     * BCrypt from before, they still match and are upgraded on the next successful login.
+     */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(LoginProperties loginProperties) {
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(loginProperties.bcryptStrength());
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder("bcrypt", Map.of("bcrypt", bcrypt));
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return encoder;
     }
 
     @Bean
@@ -54,18 +66,37 @@ public class WebSecurityConfiguration {
         };
     }
 
+    /**
+     * The token and quota filters run inside the security filter chain only, not a second time as a plain servlet filter.
+     */
+    @Bean
+    public FilterRegistrationBean<TokenAuthenticationFilter> tokenAuthenticationFilterRegistration(TokenAuthenticationFilter filter) {
+        FilterRegistrationBean<TokenAuthenticationFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
+    @Bean
+    public FilterRegistrationBean<UploadQuotaFilter> uploadQuotaFilterRegistration(UploadQuotaFilter filter) {
+        FilterRegistrationBean<UploadQuotaFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http, TokenAuthenticationFilter tokenAuthenticationFilter) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, TokenAuthenticationFilter tokenAuthenticationFilter,
+                                                   UploadQuotaFilter uploadQuotaFilter) throws Exception {
         http
                 .exceptionHandling(exception -> exception
                 .accessDeniedHandler(accessDeniedHandler()))
                 .csrf(AbstractHttpConfigurer::disable)
                 .cors(Customizer.withDefaults())
                 .authorizeHttpRequests(auth -> auth
-                        .requestMatchers("/login", "/logout", "/error").permitAll()
+                        .requestMatchers("/login", "/logout", "/error", "/actuator/health", "/actuator/prometheus").permitAll()
                         .anyRequest().authenticated()
                 )
                 .addFilterBefore(tokenAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+                .addFilterAfter(uploadQuotaFilter, TokenAuthenticationFilter.class)
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .httpBasic(AbstractHttpConfigurer::disable);
         return http.build();
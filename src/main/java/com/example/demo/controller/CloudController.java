@@ -1,131 +1,396 @@
 package com.example.demo.controller;
 
+import com.example.demo.dto.BatchResult;
+import com.example.demo.dto.FilePage;
+import com.example.demo.dto.FileSearch;
+import com.example.demo.dto.FileSort;
+import com.example.demo.dto.StorageUsage;
+import com.example.demo.entities.Blob;
 import com.example.demo.entities.File;
+import com.example.demo.entities.UploadSession;
 import com.example.demo.entities.User;
 import com.example.demo.repositories.FileRepository;
 import com.example.demo.services.AuthService;
+import com.example.demo.services.ByteBufferResource;
+import com.example.demo.services.ChunkedUploadService;
 import com.example.demo.services.FileService;
+import com.example.demo.services.TransferMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourceRegion;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.logging.Logger;
+import java.time.Instant;
 import java.util.*;
 
 @RestController
 public class CloudController {
     private final AuthService authService;
     private final FileService fileService;
+    private final ChunkedUploadService chunkedUploadService;
     private final FileRepository fileRepository;
-    private final Logger logger = Logger.getLogger(this.getClass().getName());
+    private final TransferMetrics transferMetrics;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
 
     @Autowired
-    public CloudController(AuthService authService, FileService fileService, FileRepository fileRepository) {
+    public CloudController(AuthService authService, FileService fileService,
+                           ChunkedUploadService chunkedUploadService, FileRepository fileRepository,
+                           TransferMetrics transferMetrics) {
         this.authService = authService;
         this.fileService = fileService;
+        this.chunkedUploadService = chunkedUploadService;
         this.fileRepository = fileRepository;
+        this.transferMetrics = transferMetrics;
     }
 
     @PostMapping("/file")
     public ResponseEntity<?> uploadFile(
-            @RequestHeader("auth-token") String token,
+            @AuthenticationPrincipal User user,
             @RequestParam("filename") String filename,
             @RequestPart("file") MultipartFile file) {
-        token = extractToken(token);
         try {
-            User user = authService.authenticate(token);
-            if (user == null) {
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                        .body(Map.of("message", "Unauthorized", "id", 401));
-            }
             fileService.addNewFile(filename, file, user);
             return ResponseEntity.ok().build();
+        } catch (ResponseStatusException e) {
+            return errorResponse(e);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("message", "Error saving file", "id", 500));
         }
     }
 
+    @PostMapping("/files")
+    public ResponseEntity<?> uploadFiles(@AuthenticationPrincipal User user,
+                                         @RequestPart("files") List<MultipartFile> files) {
+        try {
+            BatchResult result = fileService.addNewFiles(files, user);
+            return ResponseEntity.ok(Map.of("uploaded", result.succeeded(), "failed", result.failed()));
+        } catch (ResponseStatusException e) {
+            return errorResponse(e);
+        }
+    }
+
+    @PostMapping("/upload")
+    public ResponseEntity<?> initiateUpload(@AuthenticationPrincipal User user,
+                                            @RequestParam("filename") String filename,
+                                            @RequestParam("size") long size,
+                                            @RequestParam(value = "partSize", defaultValue = "8388608") long partSize) {
+        try {
+            UploadSession session = chunkedUploadService.initiate(filename, size, partSize, user);
+            return ResponseEntity.ok(Map.of(
+                    "uploadId", session.getId(),
+                    "partSize", session.getPartSize(),
+                    "partCount", session.getPartCount()));
+        } catch (ResponseStatusException e) {
+            return errorResponse(e);
+        }
+    }
+
+    @PutMapping("/upload/{uploadId}/part/{partNumber}")
+    public ResponseEntity<?> uploadPart(@AuthenticationPrincipal User user,
+                                        @PathVariable("uploadId") String uploadId,
+                                        @PathVariable("partNumber") int partNumber,
+                                        InputStream body) {
+        try {
+            chunkedUploadService.uploadPart(uploadId, partNumber, body, user);
+            return ResponseEntity.ok().build();
+        } catch (ResponseStatusException e) {
+            return errorResponse(e);
+        }
+    }
+
+    @GetMapping("/upload/{uploadId}")
+    public ResponseEntity<?> uploadStatus(@AuthenticationPrincipal User user,
+                                          @PathVariable("uploadId") String uploadId) {
+        try {
+            UploadSession session = chunkedUploadService.getSession(uploadId, user);
+            return ResponseEntity.ok(Map.of(
+                    "uploadId", session.getId(),
+                    "filename", session.getFilename(),
+                    "size", session.getSize(),
+                    "partSize", session.getPartSize(),
+                    "partCount", session.getPartCount(),
+                    "parts", chunkedUploadService.receivedParts(uploadId)));
+        } catch (ResponseStatusException e) {
+            return errorResponse(e);
+        }
+    }
+
+    @PostMapping("/upload/{uploadId}/complete")
+    public ResponseEntity<?> completeUpload(@AuthenticationPrincipal User user,
+                                            @PathVariable("uploadId") String uploadId) {
+        try {
+            chunkedUploadService.complete(uploadId, user);
+            return ResponseEntity.ok().build();
+        } catch (ResponseStatusException e) {
+            return errorResponse(e);
+        }
+    }
+
+    @DeleteMapping("/upload/{uploadId}")
+    public ResponseEntity<?> abortUpload(@AuthenticationPrincipal User user,
+                                         @PathVariable("uploadId") String uploadId) {
+        try {
+            chunkedUploadService.abort(uploadId, user);
+            return ResponseEntity.ok().build();
+        } catch (ResponseStatusException e) {
+            return errorResponse(e);
+        }
+    }
+
     @GetMapping("/list")
-    public ResponseEntity<?> listFiles(@RequestHeader("auth-token") String token,
-                                       @RequestParam(value = "limit", required = false) Integer limit) {
-        token = extractToken(token);
-        logger.info("Received auth-token: " + token);
-        User user = authService.authenticate(token);
-        if (user == null) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "Unauthorized", "id", 401));
+    public ResponseEntity<?> listFiles(@AuthenticationPrincipal User user,
+                                       @RequestParam(value = "limit", required = false) Integer limit,
+                                       @RequestParam(value = "sort", defaultValue = "name") String sort,
+                                       @RequestParam(value = "cursor", required = false) String cursor) {
+        try {
+            FilePage page = fileService.listFiles(user, FileSort.parse(sort), cursor,
+                    limit != null ? limit : FileService.MAX_PAGE_SIZE);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.nextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+            }
+            return response.body(page);
+        } catch (ResponseStatusException e) {
+            return errorResponse(e);
         }
+    }
 
-        List<File> files = fileService.findByUser(user);
-        if (limit != null) {
-            files = files.subList(0, Math.min(limit, files.size()));
+    /**
+     * Searches the user's files by name, size and upload time, see {@link FileSearch}. Pages are
+     * ordered by name and continued like /list.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchFiles(@AuthenticationPrincipal User user,
+                                         @RequestParam(value = "q", defaultValue = "") String query,
+                                         @RequestParam(value = "match", defaultValue = "substring") String match,
+                                         @RequestParam(value = "minSize", required = false) Long minSize,
+                                         @RequestParam(value = "maxSize", required = false) Long maxSize,
+                                         @RequestParam(value = "uploadedAfter", required = false) Instant uploadedAfter,
+                                         @RequestParam(value = "uploadedBefore", required = false) Instant uploadedBefore,
+                                         @RequestParam(value = "limit", required = false) Integer limit,
+                                         @RequestParam(value = "cursor", required = false) String cursor) {
+        try {
+            FileSearch search = new FileSearch(query, FileSearch.Match.parse(match), minSize, maxSize,
+                    uploadedAfter, uploadedBefore);
+            FilePage page = fileService.searchFiles(user, search, cursor,
+                    limit != null ? limit : FileService.MAX_PAGE_SIZE);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.nextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+            }
+            return response.body(page);
+        } catch (ResponseStatusException e) {
+            return errorResponse(e);
         }
-        return ResponseEntity.ok(files);
     }
 
-    @DeleteMapping("/file")
-    public ResponseEntity<?> deleteFile(@RequestHeader("auth-token") String token,
-                                        @RequestParam("filename") String filename) {
-        token = extractToken(token);
-        User user = authService.authenticate(token);
-        if (user == null) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(Map.of("message", "Unauthorized", "id", 401));
+    @GetMapping("/usage")
+    public ResponseEntity<?> usage(@AuthenticationPrincipal User user) {
+        try {
+            StorageUsage usage = fileService.getUsage(user);
+            return ResponseEntity.ok(Map.of("used", usage.getUsed(), "quota", usage.getQuota()));
+        } catch (ResponseStatusException e) {
+            return errorResponse(e);
         }
+    }
 
+    @DeleteMapping("/file")
+    public ResponseEntity<?> deleteFile(@AuthenticationPrincipal User user,
+                                        @RequestParam("filename") String filename) {
         Optional<File> file = fileService.findByUserAndFilename(user, filename);
         if (file.isEmpty()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(Map.of("message", "File not found", "id", 400));
         }
 
-        try {
-            fileRepository.delete(file.get());
-            Path userDirectory = Paths.get("file-storage", String.valueOf(user.getId()));
-            Path filePath = userDirectory.resolve(filename);
-            Files.deleteIfExists(filePath);
+        fileService.deleteFile(file.get(), user);
+        return ResponseEntity.ok().build();
+    }
 
+    /**
+     * Restores a deleted file within the undelete window, see storage.deletion.undelete-window.
+     */
+    @PostMapping("/file/restore")
+    public ResponseEntity<?> restoreFile(@AuthenticationPrincipal User user,
+                                         @RequestParam("filename") String filename) {
+        try {
+            fileService.restoreFile(filename, user);
             return ResponseEntity.ok().build();
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("message", "Error deleting file from disk", "id", 500));
+        } catch (ResponseStatusException e) {
+            return errorResponse(e);
+        }
+    }
+
+    @DeleteMapping("/files")
+    public ResponseEntity<?> deleteFiles(@AuthenticationPrincipal User user,
+                                         @RequestBody Map<String, List<String>> body) {
+        List<String> filenames = body.get("filenames");
+        if (filenames == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", "Filenames are required", "id", 400));
         }
+
+        try {
+            return ResponseEntity.ok(Map.of("deleted", fileService.deleteFiles(filenames, user)));
+        } catch (ResponseStatusException e) {
+            return errorResponse(e);
+        }
+    }
+
+    /**
+     * Streams the selected files as one ZIP archive. The archive is written to the response while
+     * the files are read, so once the first bytes are out errors can only abort the connection.
+     */
+    @PostMapping("/files/zip")
+    public ResponseEntity<?> downloadZip(@AuthenticationPrincipal User user,
+                                         @RequestBody Map<String, List<String>> body,
+                                         HttpServletResponse response) throws IOException {
+        List<String> filenames = body.get("filenames");
+        if (filenames == null || filenames.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", "Filenames are required", "id", 400));
+        }
+
+        List<File> files;
+        try {
+            files = fileService.findFiles(user, filenames);
+        } catch (ResponseStatusException e) {
+            return errorResponse(e);
+        }
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files.zip\"");
+        fileService.writeZip(files, user, response.getOutputStream());
+        return null;
     }
 
     @GetMapping("/file")
-    public ResponseEntity<?> downloadFile(@RequestHeader("auth-token") String token,
-                                          @RequestParam("filename") String filename) {
-        token = extractToken(token);
+    public ResponseEntity<?> downloadFile(@AuthenticationPrincipal User user,
+                                          @RequestParam("filename") String filename,
+                                          @RequestHeader HttpHeaders requestHeaders,
+                                          HttpServletRequest request,
+                                          WebRequest webRequest) {
         try {
-            User user = authService.authenticate(token);
-            if (user == null) {
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                        .body(Map.of("message", "Unauthorized", "id", 401));
-            }
-            fileService.findByUserAndFilename(user, filename)
+            File file = fileService.findByUserAndFilename(user, filename)
                     .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "File not found"));
 
-            Path filePath = Paths.get("file-storage", String.valueOf(user.getId()), filename);
-            logger.info("File path: " + filePath.toAbsolutePath());
-            if (!Files.exists(filePath)) {
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .body(Map.of("message", "File not found on disk", "id", 500));
+            // blob rows carry length and time, so the backend is only asked about files outside the blob store
+            Resource stored = file.getBlob() == null ? fileService.storedContent(file, user) : null;
+            if (stored != null && !stored.exists()) {
+                return fileNotOnDisk();
             }
 
-            byte[] fileContent = Files.readAllBytes(filePath);
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .body(fileContent);
+            // compressed blobs are sent as stored when the client takes gzip, and decompressed otherwise
+            Blob blob = file.getBlob();
+            boolean compressed = blob != null && blob.getCodec() == Blob.Codec.GZIP;
+            boolean decompress = compressed && !acceptsGzip(requestHeaders);
+
+            long length = blob == null ? stored.contentLength() : decompress ? blob.getSize() : blob.getStoredSize();
+            long lastModified = blob == null ? stored.lastModified() : file.getCreatedAt().toEpochMilli();
+            String eTag = blob != null
+                    ? "\"" + blob.getDigest() + (compressed && !decompress ? "-gzip" : "") + "\""
+                    : "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+            if (webRequest.checkNotModified(eTag, lastModified)) {
+                return null;
+            }
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+            headers.set(HttpHeaders.ACCEPT_RANGES, decompress ? "none" : "bytes");
+            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+            headers.setETag(eTag);
+            headers.setLastModified(lastModified);
+            if (compressed) {
+                headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            if (decompress) {
+                // the decompressed content cannot be seeked into, Range requests get the whole file
+                headers.setContentLength(length);
+                transferMetrics.recordDownload(length, "decompressed");
+                return new ResponseEntity<>(new InputStreamResource(
+                        transferMetrics.timeDownload(fileService.openContent(file, user), "decompressed")), headers, HttpStatus.OK);
+            }
+            if (compressed) {
+                headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+
+            List<HttpRange> ranges;
+            try {
+                ranges = requestHeaders.getRange();
+            } catch (IllegalArgumentException e) {
+                return rangeNotSatisfiable(length);
+            }
+            // small hot blobs are copied from memory, local files go out with sendfile where possible
+            ByteBuffer cached = fileService.cachedContent(file);
+            if (cached == null && stored == null) {
+                stored = fileService.storedContent(file, user);
+                if (!stored.exists()) {
+                    return fileNotOnDisk();
+                }
+            }
+            Resource resource = cached != null ? new ByteBufferResource(cached) : stored;
+            Path filePath = cached == null && stored.isFile() ? stored.getFile().toPath() : null;
+            if (!ranges.isEmpty() && !ifRangeMatches(requestHeaders, eTag, lastModified)) {
+                // Spring applies a Range header to Resource bodies by itself, a stream body opts out of that
+                return timedBody(resource, length, cached != null ? "cache" : "stream", headers);
+            }
+
+            if (cached != null && ranges.isEmpty()) {
+                return timedBody(resource, length, "cache", headers);
+            }
+            if (ranges.isEmpty()) {
+                if (filePath != null && sendfile(request, filePath, 0, length)) {
+                    headers.setContentLength(length);
+                    transferMetrics.recordDownload(length, "sendfile");
+                    return new ResponseEntity<>(headers, HttpStatus.OK);
+                }
+                return timedBody(resource, length, "stream", headers);
+            }
+            if (ranges.size() > 1) {
+                transferMetrics.recordDownload(rangesLength(ranges, length), "range");
+            } else {
+                ResourceRegion region;
+                try {
+                    region = ranges.get(0).toResourceRegion(resource);
+                } catch (IllegalArgumentException e) {
+                    return rangeNotSatisfiable(length);
+                }
+                long start = region.getPosition();
+                long end = start + region.getCount();
+                transferMetrics.recordDownload(region.getCount(), "range");
+                if (filePath != null && sendfile(request, filePath, start, end)) {
+                    headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+                    headers.setContentLength(region.getCount());
+                    return new ResponseEntity<>(headers, HttpStatus.PARTIAL_CONTENT);
+                }
+            }
+            // Spring turns a Resource body into 206 regions (multipart/byteranges for several ranges)
+            return new ResponseEntity<>(resource, headers, HttpStatus.OK);
 
         } catch (ResponseStatusException e) {
             return ResponseEntity.status(e.getStatusCode())
@@ -137,15 +402,9 @@ public class CloudController {
     }
 
     @PutMapping("/file")
-    public ResponseEntity<?> editFileName(@RequestHeader("auth-token") String token,
+    public ResponseEntity<?> editFileName(@AuthenticationPrincipal User user,
                                           @RequestParam("filename") String filename,
                                           @RequestBody Map<String, String> body) {
-        token = extractToken(token);
-        User user = authService.authenticate(token);
-        if (user == null) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "Unauthorized", "id", 401));
-        }
-
         String newName = body.get("filename");
         if (newName == null || newName.isBlank()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -163,23 +422,20 @@ public class CloudController {
                     .body(Map.of("message", "File with this name already exists", "id", 409));
         }
 
-        Path oldFilePath = Paths.get("file-storage", String.valueOf(user.getId()), filename);
-        Path newFilePath = Paths.get("file-storage", String.valueOf(user.getId()), newName);
-
-        boolean renamed = oldFilePath.toFile().renameTo(newFilePath.toFile());
-        if (renamed) {
-            fileInfo.setFilename(newName);
-            fileRepository.save(fileInfo);
-            logger.info("File renamed to: " + newName);
+        try {
+            fileService.renameFile(fileInfo, newName, user);
+            logger.debug("File {} renamed to {}", filename, newName);
             return ResponseEntity.ok().build();
-        } else {
+        } catch (ResponseStatusException e) {
+            return errorResponse(e);
+        } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("message", "Error renaming file", "id", 500));
         }
     }
 
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody Map<String, String> credentials) {
+    public ResponseEntity<?> login(@RequestBody Map<String, String> credentials, HttpServletRequest request) {
         if (!credentials.containsKey("login") || !credentials.containsKey("password")) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .contentType(MediaType.APPLICATION_JSON)
@@ -192,8 +448,7 @@ public class CloudController {
         String login = credentials.get("login");
         String password = credentials.get("password");
         try {
-            logger.info("Login: " + login + ", password: " + password);
-            String token = authService.login(login, password);
+            String token = authService.login(login, password, request.getRemoteAddr());
             return ResponseEntity.ok()
                     .contentType(MediaType.APPLICATION_JSON)
                     .body(Map.of(
@@ -201,6 +456,14 @@ public class CloudController {
                             "status", "success"
                     ));
         } catch (ResponseStatusException e) {
+            if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(Map.of(
+                                "status", "error",
+                                "message", "Too many login attempts"
+                        ));
+            }
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .contentType(MediaType.APPLICATION_JSON)
                     .body(Map.of(
@@ -221,7 +484,7 @@ public class CloudController {
     public ResponseEntity<?> logout(@RequestHeader("auth-token") String token) {
         token = extractToken(token);
         if (authService.logout(token) != null) {
-            logger.info("Logout successful");
+            logger.debug("Logout successful");
             return ResponseEntity.ok().build();
         }
         return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of(
@@ -229,6 +492,110 @@ public class CloudController {
                 "message", "Unauthorized"));
     }
 
+    private ResponseEntity<?> errorResponse(ResponseStatusException e) {
+        return ResponseEntity.status(e.getStatusCode())
+                .body(Map.of("message", Objects.requireNonNull(e.getReason()), "id", e.getStatusCode().value()));
+    }
+
+    /**
+     * The whole content as a stream body, timed until the converter has written and closed it.
+     */
+    private ResponseEntity<?> timedBody(Resource resource, long length, String mode, HttpHeaders headers) throws IOException {
+        headers.setContentLength(length);
+        transferMetrics.recordDownload(length, mode);
+        InputStream content = transferMetrics.timeDownload(resource.getInputStream(), mode);
+        return new ResponseEntity<>(new InputStreamResource(content), headers, HttpStatus.OK);
+    }
+
+    private ResponseEntity<?> fileNotOnDisk() {
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("message", "File not found on disk", "id", 500));
+    }
+
+    /**
+     * Total bytes selected by several ranges, or 0 if one of them does not fit the content.
+     */
+    private static long rangesLength(List<HttpRange> ranges, long length) {
+        long total = 0;
+        for (HttpRange range : ranges) {
+            if (range.getRangeStart(length) >= length) {
+                return 0;
+            }
+            total += range.getRangeEnd(length) - range.getRangeStart(length) + 1;
+        }
+        return total;
+    }
+
+    private ResponseEntity<?> rangeNotSatisfiable(long length) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                .build();
+    }
+
+    /**
+     * Whether the Accept-Encoding header allows gzip, explicitly or through "*", with a non-zero q value.
+     */
+    private boolean acceptsGzip(HttpHeaders requestHeaders) {
+        Double gzip = null;
+        Double any = null;
+        for (String value : requestHeaders.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String coding : value.split(",")) {
+                String[] parts = coding.split(";");
+                String name = parts[0].trim();
+                double quality = 1;
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].trim();
+                    if (parameter.startsWith("q=")) {
+                        try {
+                            quality = Double.parseDouble(parameter.substring(2));
+                        } catch (NumberFormatException e) {
+                            quality = 0;
+                        }
+                    }
+                }
+                if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+                    gzip = quality;
+                } else if (name.equals("*")) {
+                    any = quality;
+                }
+            }
+        }
+        return gzip != null ? gzip > 0 : any != null && any > 0;
+    }
+
+    private boolean ifRangeMatches(HttpHeaders requestHeaders, String eTag, long lastModified) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(eTag);
+        }
+        if (ifRange.startsWith("W/")) {
+            return false;
+        }
+        try {
+            return requestHeaders.getFirstDate(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Hands the byte range [start, end) of the file to Tomcat's sendfile support so the body is
+     * transferred by the kernel instead of being copied through the JVM. Returns false when the
+     * connector does not support it and the caller has to write the body itself.
+     */
+    private boolean sendfile(HttpServletRequest request, Path filePath, long start, long end) throws IOException {
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR)) || end - start == 0) {
+            return false;
+        }
+        request.setAttribute(SENDFILE_FILENAME_ATTR, filePath.toRealPath().toString());
+        request.setAttribute(SENDFILE_START_ATTR, start);
+        request.setAttribute(SENDFILE_END_ATTR, end);
+        return true;
+    }
+
     private String extractToken(String authHeader) {
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             return authHeader.substring(7);
@@ -0,0 +1,12 @@
+package com.example.demo.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a batch operation: the files it succeeded for and why it failed for the others.
+ */
+public record BatchResult(List<String> succeeded, List<Failure> failed) {
+
+    public record Failure(String filename, String message, int id) {
+    }
+}
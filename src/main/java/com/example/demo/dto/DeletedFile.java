@@ -0,0 +1,16 @@
+package com.example.demo.dto;
+
+/**
+ * File row marked deleted or purged by a batch statement, as returned by the statement itself.
+ */
+public interface DeletedFile {
+    int getId();
+
+    int getUserId();
+
+    String getFilename();
+
+    String getBlobDigest();
+
+    long getSize();
+}
@@ -0,0 +1,9 @@
+package com.example.demo.dto;
+
+import java.time.Instant;
+
+/**
+ * Row of the file listing, selected directly by the listing queries instead of loading File entities.
+ */
+public record FileListItem(int id, String filename, long size, Instant createdAt, Instant updatedAt) {
+}
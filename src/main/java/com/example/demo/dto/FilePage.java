@@ -0,0 +1,9 @@
+package com.example.demo.dto;
+
+import java.util.List;
+
+/**
+ * One page of a file listing. {@code nextCursor} continues the listing and is null on the last page.
+ */
+public record FilePage(List<FileListItem> files, String nextCursor) {
+}
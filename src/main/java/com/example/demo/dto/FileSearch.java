@@ -0,0 +1,34 @@
+package com.example.demo.dto;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * Criteria of a file search. An empty name matches every file, null bounds are not applied.
+ *
+ * @param uploadedAfter  inclusive
+ * @param uploadedBefore exclusive
+ */
+public record FileSearch(String name, Match match, Long minSize, Long maxSize,
+                         Instant uploadedAfter, Instant uploadedBefore) {
+    /**
+     * How the name is matched against filenames, always case-insensitively.
+     */
+    public enum Match {
+        PREFIX,
+        SUBSTRING,
+        // the name is the extension, with or without the leading dot
+        EXTENSION;
+
+        public static Match parse(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown match: " + value);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.demo.dto;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Locale;
+
+/**
+ * Orderings supported by the file listing.
+ */
+public enum FileSort {
+    NAME,
+    SIZE,
+    ID;
+
+    public static FileSort parse(String value) {
+        try {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown sort: " + value);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.demo.dto;
+
+/**
+ * File whose content is still stored under its owner and name instead of in the blob store.
+ */
+public record LegacyFile(int id, int userId, String filename) {
+}
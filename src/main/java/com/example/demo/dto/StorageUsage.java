@@ -0,0 +1,10 @@
+package com.example.demo.dto;
+
+/**
+ * Bytes a user stores and may store, read from the counters on the users row.
+ */
+public interface StorageUsage {
+    long getUsed();
+
+    long getQuota();
+}
@@ -0,0 +1,71 @@
+package com.example.demo.entities;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "blob")
+public class Blob {
+    @Id
+    @Column(name = "digest", length = 64)
+    private String digest;
+
+    private long size;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "codec", nullable = false, length = 16)
+    private Codec codec = Codec.IDENTITY;
+
+    @Column(name = "stored_size", nullable = false)
+    private long storedSize;
+
+    @Column(name = "ref_count", nullable = false)
+    private long refCount;
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public void setCodec(Codec codec) {
+        this.codec = codec;
+    }
+
+    public long getStoredSize() {
+        return storedSize;
+    }
+
+    public void setStoredSize(long storedSize) {
+        this.storedSize = storedSize;
+    }
+
+    public long getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(long refCount) {
+        this.refCount = refCount;
+    }
+
+    /**
+     * Encoding of the content on disk. {@link #getSize()} is always the size of the original content.
+     */
+    public enum Codec {
+        IDENTITY,
+        GZIP
+    }
+}
@@ -1,11 +1,24 @@
 package com.example.demo.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.SQLRestriction;
+import org.hibernate.annotations.UpdateTimestamp;
 
+import java.time.Instant;
+
+/**
+ * A stored file. Deleted files stay in the table until they are purged, see V5__soft_delete.sql;
+ * they are invisible to every entity query, only native queries of {@link com.example.demo.repositories.FileRepository}
+ * see them. The unique index on (user_id, filename) is partial and therefore lives in the migration.
+ */
 @Entity
-@Table(name = "file", uniqueConstraints = {
-        @UniqueConstraint(columnNames = {"filename", "user_id"})
+@Table(name = "file", indexes = {
+        @Index(name = "file_user_id_id_idx", columnList = "user_id, id"),
+        @Index(name = "file_user_id_size_id_idx", columnList = "user_id, size, id")
 })
+@SQLRestriction("deleted_at is null")
 public class File {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -16,10 +29,23 @@ public class File {
 
     private long size;
 
-    @ManyToOne
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private Instant createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
+    @JsonIgnore
+    @ManyToOne
+    @JoinColumn(name = "blob_digest")
+    private Blob blob;
+
     public int getId() {
         return id;
     }
@@ -44,6 +70,18 @@ public class File {
         this.size = size;
     }
 
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
     public User getUser() {
         return user;
     }
@@ -51,4 +89,27 @@ public class File {
     public void setUser(User user) {
         this.user = user;
     }
-}
\ No newline at end of file
+
+    public Blob getBlob() {
+        return blob;
+    }
+
+    public void setBlob(Blob blob) {
+        this.blob = blob;
+    }
+
+    /**
+     * A detached copy with the same values, so a shared instance can be handed out without sharing its state.
+     */
+    public File copy() {
+        File copy = new File();
+        copy.id = id;
+        copy.filename = filename;
+        copy.size = size;
+        copy.createdAt = createdAt;
+        copy.updatedAt = updatedAt;
+        copy.user = user;
+        copy.blob = blob;
+        return copy;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.demo.entities;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * An operation on stored content that has started and not finished yet, see V4__storage_intent.sql.
+ */
+@Entity
+@Table(name = "storage_intent")
+public class StorageIntent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "operation", nullable = false)
+    private UUID operation;
+
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Column(name = "digest", length = 64)
+    private String digest;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public UUID getOperation() {
+        return operation;
+    }
+
+    public void setOperation(UUID operation) {
+        this.operation = operation;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.demo.entities;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "upload_part", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"session_id", "part_number"})
+})
+public class UploadPart {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private int id;
+
+    @ManyToOne
+    @JoinColumn(name = "session_id", nullable = false)
+    private UploadSession session;
+
+    @Column(name = "part_number", nullable = false)
+    private int partNumber;
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public UploadSession getSession() {
+        return session;
+    }
+
+    public void setSession(UploadSession session) {
+        this.session = session;
+    }
+
+    public int getPartNumber() {
+        return partNumber;
+    }
+
+    public void setPartNumber(int partNumber) {
+        this.partNumber = partNumber;
+    }
+}
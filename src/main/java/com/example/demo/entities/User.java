@@ -1,9 +1,12 @@
 package com.example.demo.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", uniqueConstraints = {
+        @UniqueConstraint(name = "users_login_key", columnNames = "login")
+})
 public class User {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -11,6 +14,7 @@ public class User {
 
     private String login;
 
+    @JsonIgnore
     private String password;
 
     public int getId() {
@@ -36,4 +40,14 @@ public class User {
     public void setPassword(String password) {
         this.password = password;
     }
+
+    /**
+     * Spring Security names an authentication by its principal's toString. Signed tokens resolve to
+     * an uninitialized proxy, which this must not load: final keeps the proxy from intercepting it,
+     * and getId is answered by the proxy without a query.
+     */
+    @Override
+    public final String toString() {
+        return "User#" + getId();
+    }
 }
\ No newline at end of file
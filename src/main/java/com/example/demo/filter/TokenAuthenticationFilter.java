@@ -8,20 +8,25 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.logging.Logger;
 
+/**
+ * The single place where a request's auth-token is resolved. The authenticated {@link User}
+ * is put into the security context, controllers receive it via {@code @AuthenticationPrincipal}.
+ */
 @Component
 public class TokenAuthenticationFilter extends OncePerRequestFilter {
+    private static final List<GrantedAuthority> AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+
     private final AuthService authService;
-    private final Logger logger = Logger.getLogger(this.getClass().getName());
 
     @Autowired
     public TokenAuthenticationFilter(AuthService authService) {
@@ -31,43 +36,28 @@ public class TokenAuthenticationFilter extends OncePerRequestFilter {
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
-        logger.info("Запрос на: " + request.getRequestURI());
-
-        if (request.getRequestURI().startsWith("/login") || request.getRequestURI().startsWith("/logout")) {
+        if (request.getRequestURI().startsWith("/login") || request.getRequestURI().startsWith("/logout")
+                || request.getRequestURI().startsWith("/actuator")) {
             filterChain.doFilter(request, response);
             return;
         }
 
         String token = extractTokenFromRequest(request);
-        if (token != null) {
-            try {
-                User user = authService.authenticate(token);
-                if (user != null) {
-                    logger.info("Token: " + token + ", user: " + user);
-                    Authentication authentication = new UsernamePasswordAuthenticationToken(user, null, List.of(new SimpleGrantedAuthority("ROLE_USER")));
-                    SecurityContextHolder.getContext().setAuthentication(authentication);
-                    logger.info("SecurityContext set for user: " + SecurityContextHolder.getContext().getAuthentication());
-                } else {
-                    logger.warning("User authentication failed.");
-                    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-                    response.getWriter().write("{\"message\": \"Unauthorized\", \"id\": 401}");
-                    return;
-                }
-            } catch (Exception e) {
-                SecurityContextHolder.clearContext();
-                logger.severe("Authentication error: " + e.getMessage());
-                response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-                response.getWriter().write("{\"message\": \"Unauthorized\", \"id\": 401}");
-                return;
-            }
-        } else {
-            logger.severe("No token found.");
+        if (token == null) {
             response.setHeader("Set-Cookie", "JSESSIONID=; Path=/; HttpOnly; SameSite=Strict; Max-Age=0");
-            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-            response.getWriter().write("{\"message\": \"Unauthorized\", \"id\": 401}");
+            unauthorized(response);
+            return;
+        }
+        User user = authService.findUser(token);
+        if (user == null) {
+            SecurityContextHolder.clearContext();
+            unauthorized(response);
             return;
         }
 
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(UsernamePasswordAuthenticationToken.authenticated(user, null, AUTHORITIES));
+        SecurityContextHolder.setContext(context);
         filterChain.doFilter(request, response);
     }
 
@@ -78,4 +68,9 @@ public class TokenAuthenticationFilter extends OncePerRequestFilter {
         }
         return token;
     }
+
+    private void unauthorized(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+        response.getWriter().write("{\"message\": \"Unauthorized\", \"id\": 401}");
+    }
 }
@@ -0,0 +1,58 @@
+package com.example.demo.filter;
+
+import com.example.demo.entities.User;
+import com.example.demo.services.QuotaService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Rejects multipart uploads whose Content-Length alone exceeds the user's remaining quota, before
+ * the body is read and spooled to disk. The length includes the multipart framing, so an upload
+ * that would just fit can be turned away by a few hundred bytes. Uploads that pass are still
+ * reserved exactly when they are stored.
+ */
+@Component
+public class UploadQuotaFilter extends OncePerRequestFilter {
+    private static final Set<String> UPLOAD_PATHS = Set.of("/file", "/files");
+
+    private final QuotaService quotaService;
+
+    @Autowired
+    public UploadQuotaFilter(QuotaService quotaService) {
+        this.quotaService = quotaService;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod()) || !UPLOAD_PATHS.contains(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        long contentLength = request.getContentLengthLong();
+        if (contentLength > 0 && authentication != null && authentication.getPrincipal() instanceof User user) {
+            try {
+                quotaService.checkAvailable(user, contentLength);
+            } catch (ResponseStatusException e) {
+                response.setStatus(e.getStatusCode().value());
+                response.setHeader("Connection", "close");
+                response.getWriter().write("{\"message\": \"" + e.getReason() + "\", \"id\": " + e.getStatusCode().value() + "}");
+                return;
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.demo.repositories;
+
+import com.example.demo.entities.Blob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BlobRepository extends JpaRepository<Blob, String> {
+    /**
+     * Waits for the advisory lock on the key, it is held until the surrounding transaction ends.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    @Query(value = "select 1 from pg_advisory_xact_lock(:key)", nativeQuery = true)
+    int lock(@Param("key") long key);
+
+    @Transactional
+    @Modifying
+    @Query("update Blob b set b.refCount = b.refCount + 1 where b.digest = :digest")
+    int incrementRefCount(@Param("digest") String digest);
+
+    @Transactional
+    @Modifying
+    @Query(value = "insert into blob (digest, size, codec, stored_size, ref_count) " +
+            "values (:digest, :size, :codec, :storedSize, 1) " +
+            "on conflict (digest) do update set ref_count = blob.ref_count + 1", nativeQuery = true)
+    void insertOrReference(@Param("digest") String digest, @Param("size") long size,
+                           @Param("codec") String codec, @Param("storedSize") long storedSize);
+
+    @Transactional
+    @Modifying
+    @Query("update Blob b set b.refCount = b.refCount - 1 where b.digest = :digest")
+    int decrementRefCount(@Param("digest") String digest);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Blob b where b.digest = :digest and b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("digest") String digest);
+
+    @Transactional
+    @Modifying
+    @Query("update Blob b set b.refCount = b.refCount - 1 where b.digest in :digests")
+    int decrementRefCounts(@Param("digests") Collection<String> digests);
+
+    /**
+     * Sets the reference count to the number of files that point at the blob.
+     *
+     * @return 0 if there is no row for the digest
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update blob set ref_count = (select count(*) from file where blob_digest = :digest) " +
+            "where digest = :digest", nativeQuery = true)
+    int recount(@Param("digest") String digest);
+
+    @Query("select b.digest from Blob b where b.digest in :digests and b.refCount <= 0")
+    List<String> findUnreferenced(@Param("digests") Collection<String> digests);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Blob b where b.digest in :digests and b.refCount <= 0")
+    int deleteUnreferenced(@Param("digests") Collection<String> digests);
+}
@@ -1,16 +1,128 @@
 package com.example.demo.repositories;
 
+import com.example.demo.dto.DeletedFile;
+import com.example.demo.dto.FileListItem;
+import com.example.demo.dto.LegacyFile;
 import com.example.demo.entities.File;
 import com.example.demo.entities.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 @Repository
 public interface FileRepository extends JpaRepository<File, Integer> {
-    List<File> findByUser(User user);
     boolean existsByFilenameAndUserId(String filename, int user_id);
     Optional<File> findByUserAndFilename(User user, String filename);
-}
\ No newline at end of file
+    List<File> findByUserIdAndFilenameIn(int userId, Collection<String> filenames);
+
+    @Query("select f.filename from File f where f.user.id = :userId and f.filename in :filenames")
+    List<String> findExistingFilenames(@Param("userId") int userId, @Param("filenames") Collection<String> filenames);
+
+    String DELETED_FILE = "id, user_id as \"userId\", filename, blob_digest as \"blobDigest\", size";
+
+    /**
+     * Marks the file deleted, it stays restorable until it is purged.
+     *
+     * @return 0 if it was deleted already
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update file set deleted_at = now() where id = :id and deleted_at is null", nativeQuery = true)
+    int markDeleted(@Param("id") int id);
+
+    /**
+     * Marks the named files deleted in one statement and returns what was marked.
+     */
+    @Transactional
+    @Query(value = "update file set deleted_at = now() " +
+            "where user_id = :userId and filename in (:filenames) and deleted_at is null " +
+            "returning " + DELETED_FILE, nativeQuery = true)
+    List<DeletedFile> markDeletedByFilenames(@Param("userId") int userId, @Param("filenames") Collection<String> filenames);
+
+    /**
+     * The most recently deleted file of that name that was not purged yet.
+     */
+    @Query(value = "select " + DELETED_FILE + " from file " +
+            "where user_id = :userId and filename = :filename and deleted_at is not null " +
+            "order by deleted_at desc limit 1", nativeQuery = true)
+    Optional<DeletedFile> findDeleted(@Param("userId") int userId, @Param("filename") String filename);
+
+    /**
+     * Clears the deletion mark. Fails on the unique index if the name was taken again in the meantime.
+     *
+     * @return 0 if the file was purged or restored in the meantime
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update file set deleted_at = null where id = :id and deleted_at is not null", nativeQuery = true)
+    int restore(@Param("id") int id);
+
+    /**
+     * Removes up to {@code limit} files deleted before the given time and returns them, so the caller
+     * can release their content. Rows another purge has locked are skipped. The same statement
+     * journals every purged blob, see {@link StorageIntentRepository}, so the releases are repaired
+     * if they do not happen.
+     */
+    @Transactional
+    @Query(value = "with purged as (delete from file where id in " +
+            "(select id from file where deleted_at < :before order by deleted_at limit :limit for update skip locked) " +
+            "and deleted_at < :before returning *), " +
+            "journal as (insert into storage_intent (operation, digest) " +
+            "select :operation, blob_digest from purged where blob_digest is not null) " +
+            "select " + DELETED_FILE + " from purged", nativeQuery = true)
+    List<DeletedFile> purgeDeleted(@Param("before") Instant before, @Param("limit") int limit,
+                                   @Param("operation") UUID operation);
+
+    @Query(value = "select count(*) from file where deleted_at is not null", nativeQuery = true)
+    long countDeleted();
+
+    @Query("select new com.example.demo.dto.LegacyFile(f.id, f.user.id, f.filename) from File f " +
+            "where f.blob is null and f.id > :id order by f.id")
+    List<LegacyFile> findLegacyFiles(@Param("id") int afterId, Limit limit);
+
+    /**
+     * Points a legacy file at its blob, unless it was renamed, deleted or migrated in the meantime.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update file set blob_digest = :digest " +
+            "where id = :id and filename = :filename and blob_digest is null and deleted_at is null", nativeQuery = true)
+    int attachBlob(@Param("id") int id, @Param("filename") String filename, @Param("digest") String digest);
+
+    // Keyset pages: each query seeks past the last row of the previous page on a (user_id, ...) index
+
+    String LIST_ITEM = "select new com.example.demo.dto.FileListItem(f.id, f.filename, f.size, f.createdAt, f.updatedAt) " +
+            "from File f where f.user.id = :userId";
+
+    @Query(LIST_ITEM + " and f.filename > :filename order by f.filename")
+    List<FileListItem> findPageByFilename(@Param("userId") int userId, @Param("filename") String filename, Limit limit);
+
+    @Query(LIST_ITEM + " and f.size >= :size and (f.size > :size or f.id > :id) order by f.size, f.id")
+    List<FileListItem> findPageBySize(@Param("userId") int userId, @Param("size") long size, @Param("id") int id, Limit limit);
+
+    @Query(LIST_ITEM + " and f.id > :id order by f.id")
+    List<FileListItem> findPageById(@Param("userId") int userId, @Param("id") int id, Limit limit);
+
+    /**
+     * One page of the files whose name matches the ILIKE pattern, by name. The pattern is looked up
+     * in the (user_id, filename) trigram index, the other conditions filter what it finds.
+     */
+    @Query(LIST_ITEM + " and f.filename ilike :pattern escape '\\' " +
+            "and f.size >= :minSize and f.size <= :maxSize " +
+            "and (:after is null or f.createdAt >= :after) and (:before is null or f.createdAt < :before) " +
+            "and f.filename > :filename order by f.filename")
+    List<FileListItem> searchPageByFilename(@Param("userId") int userId, @Param("pattern") String pattern,
+                                            @Param("minSize") long minSize, @Param("maxSize") long maxSize,
+                                            @Param("after") Instant uploadedAfter, @Param("before") Instant uploadedBefore,
+                                            @Param("filename") String filename, Limit limit);
+}
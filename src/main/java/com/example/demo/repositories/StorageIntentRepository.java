@@ -0,0 +1,43 @@
+package com.example.demo.repositories;
+
+import com.example.demo.entities.StorageIntent;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface StorageIntentRepository extends JpaRepository<StorageIntent, Long> {
+    @Transactional
+    @Modifying
+    @Query(value = "insert into storage_intent (operation, user_id, digest) values (:operation, :userId, :digest)",
+            nativeQuery = true)
+    void open(@Param("operation") UUID operation, @Param("userId") Integer userId, @Param("digest") String digest);
+
+    /**
+     * Records the content an upload turned out to have. The grace period starts over, it covers the
+     * short step from here to the file row rather than the whole transfer.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update storage_intent set digest = :digest, created_at = now() where operation = :operation",
+            nativeQuery = true)
+    int recordDigest(@Param("operation") UUID operation, @Param("digest") String digest);
+
+    @Transactional
+    @Modifying
+    @Query("delete from StorageIntent i where i.operation = :operation")
+    int close(@Param("operation") UUID operation);
+
+    @Query("select i from StorageIntent i where i.createdAt < :before order by i.id")
+    List<StorageIntent> findStale(@Param("before") Instant before, Limit limit);
+
+    boolean existsByDigestAndCreatedAtGreaterThanEqual(String digest, Instant since);
+}
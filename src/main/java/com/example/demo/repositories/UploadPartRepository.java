@@ -0,0 +1,26 @@
+package com.example.demo.repositories;
+
+import com.example.demo.entities.UploadPart;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface UploadPartRepository extends JpaRepository<UploadPart, Integer> {
+    @Query("select p.partNumber from UploadPart p where p.session.id = :sessionId order by p.partNumber")
+    List<Integer> findPartNumbers(@Param("sessionId") String sessionId);
+
+    long countBySessionId(String sessionId);
+
+    boolean existsBySessionIdAndPartNumber(String sessionId, int partNumber);
+
+    @Transactional
+    @Modifying
+    @Query("delete from UploadPart p where p.session.id = :sessionId")
+    void deleteBySessionId(@Param("sessionId") String sessionId);
+}
@@ -1,12 +1,67 @@
 package com.example.demo.repositories;
 
+import com.example.demo.dto.StorageUsage;
 import com.example.demo.entities.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Integer> {
     Optional<User> findByLogin(String login);
-}
\ No newline at end of file
+
+    /**
+     * Users whose password is not a BCrypt hash, see {@link com.example.demo.services.PasswordMigrationService#isEncoded}.
+     */
+    @Query("select u from User u where u.id > :afterId " +
+            "and substring(u.password, case when u.password like '{bcrypt}%' then 9 else 1 end, 4) " +
+            "not in ('$2a$', '$2b$', '$2y$') order by u.id")
+    List<User> findUnencodedPasswords(@Param("afterId") int afterId, Limit limit);
+
+    /**
+     * Replaces the password only if it is still the expected one.
+     */
+    @Transactional
+    @Modifying
+    @Query("update User u set u.password = :password where u.id = :userId and u.password = :expected")
+    int updatePassword(@Param("userId") int userId, @Param("password") String password, @Param("expected") String expected);
+
+    /**
+     * Adds to the user's usage only if it stays within the quota, the check and the update are one statement.
+     *
+     * @return 1 if the bytes were reserved, 0 if the quota would be exceeded
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update users set used_bytes = used_bytes + :bytes " +
+            "where id = :userId and used_bytes + :bytes <= coalesce(quota_bytes, :defaultQuota)", nativeQuery = true)
+    int reserveBytes(@Param("userId") int userId, @Param("bytes") long bytes, @Param("defaultQuota") long defaultQuota);
+
+    @Transactional
+    @Modifying
+    @Query(value = "update users set used_bytes = greatest(used_bytes - :bytes, 0) where id = :userId", nativeQuery = true)
+    int releaseBytes(@Param("userId") int userId, @Param("bytes") long bytes);
+
+    /**
+     * Sets the user's usage to the size of their files, unless an operation that changes it started
+     * since the given time and may not have reached the file table yet.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update users u set used_bytes = (select coalesce(sum(f.size), 0) from file f where f.user_id = u.id and f.deleted_at is null) " +
+            "where u.id = :userId and not exists " +
+            "(select 1 from storage_intent i where i.user_id = :userId and i.created_at >= :since)", nativeQuery = true)
+    int recountUsedBytes(@Param("userId") int userId, @Param("since") Instant since);
+
+    @Query(value = "select used_bytes as \"used\", coalesce(quota_bytes, :defaultQuota) as \"quota\" " +
+            "from users where id = :userId", nativeQuery = true)
+    Optional<StorageUsage> findUsage(@Param("userId") int userId, @Param("defaultQuota") long defaultQuota);
+}
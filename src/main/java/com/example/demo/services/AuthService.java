@@ -2,50 +2,126 @@ package com.example.demo.services;
 
 import com.example.demo.entities.User;
 import com.example.demo.repositories.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 
 @Service
 public class AuthService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
-    private final Map<String, User> activeTokens = new ConcurrentHashMap<>();
+    private final TokenStore tokenStore;
+    private final LoginThrottle loginThrottle;
+    private final MeterRegistry meterRegistry;
+    private final Timer loginSuccess;
+    private final Timer loginFailure;
+    private final Timer loginThrottled;
+    private final Timer resolveSuccess;
+    private final Timer resolveFailure;
 
     @Autowired
-    public AuthService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public AuthService(UserRepository userRepository, PasswordEncoder passwordEncoder, TokenStore tokenStore,
+                       LoginThrottle loginThrottle, MeterRegistry meterRegistry) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.tokenStore = tokenStore;
+        this.loginThrottle = loginThrottle;
+        this.meterRegistry = meterRegistry;
+        this.loginSuccess = timer("auth.login", "success");
+        this.loginFailure = timer("auth.login", "failure");
+        this.loginThrottled = timer("auth.login", "throttled");
+        this.resolveSuccess = timer("auth.token.resolve", "success");
+        this.resolveFailure = timer("auth.token.resolve", "failure");
     }
 
-    public String login(String login, String password) {
-        User user = userRepository.findByLogin(login)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid credentials"));
+    /**
+     * Checks the password and issues a token. Timed as auth.login, the password hash check dominates it.
+     * The check runs on the {@link LoginThrottle} pool, attempts over its limits fail with 429.
+     *
+     * @param clientAddress address the attempt comes from, null if unknown
+     */
+    public String login(String login, String password, String clientAddress) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Timer outcome = loginFailure;
+        try {
+            loginThrottle.acquire(login, clientAddress);
+            User user = userRepository.findByLogin(login)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid credentials"));
 
-        if (!passwordEncoder.matches(password, user.getPassword())) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid credentials");
+            if (!loginThrottle.verify(() -> passwordMatches(password, user))) {
+                throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid credentials");
+            }
+
+            String token = tokenStore.issue(user);
+            outcome = loginSuccess;
+            return token;
+        } catch (ResponseStatusException e) {
+            if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+                outcome = loginThrottled;
+            }
+            throw e;
+        } finally {
+            sample.stop(outcome);
         }
+    }
 
-        String token = UUID.randomUUID().toString();
-        activeTokens.put(token, user);
-        return token;
+    /**
+     * Checks the password against the stored hash. A password still stored in plain text is
+     * compared directly, it and hashes below the target cost are rehashed once the password matched.
+     */
+    private boolean passwordMatches(String password, User user) {
+        String stored = user.getPassword();
+        if (stored == null || password == null) {
+            return false;
+        }
+        if (PasswordMigrationService.isEncoded(stored)) {
+            if (!passwordEncoder.matches(password, stored)) {
+                return false;
+            }
+            if (passwordEncoder.upgradeEncoding(stored)) {
+                rehash(user, password, stored);
+            }
+            return true;
+        }
+        if (!MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8))) {
+            return false;
+        }
+        rehash(user, password, stored);
+        return true;
+    }
+
+    private void rehash(User user, String password, String stored) {
+        String encoded = passwordEncoder.encode(password);
+        if (userRepository.updatePassword(user.getId(), encoded, stored) > 0) {
+            user.setPassword(encoded);
+        }
     }
 
     public User logout(String token) {
-        return activeTokens.remove(token);
+        return tokenStore.revoke(token);
     }
 
-    public User authenticate(String token) {
-        User user = activeTokens.get(token);
-        if (user == null) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized");
-        }
+    /**
+     * Resolves the user of an active token, or returns null if the token is unknown, expired or revoked.
+     */
+    public User findUser(String token) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        User user = tokenStore.resolve(token);
+        sample.stop(user != null ? resolveSuccess : resolveFailure);
         return user;
     }
-}
\ No newline at end of file
+
+    private Timer timer(String name, String outcome) {
+        return Timer.builder(name)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.demo.services;
+
+import com.example.demo.config.ContentCacheProperties;
+import com.example.demo.entities.Blob;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Stored bytes of small blobs in direct buffers, so hot content is copied from memory instead of
+ * read from disk and adds nothing to the heap the collector has to scan. Caffeine weighs entries
+ * by their size and evicts by W-TinyLFU, which keeps frequently downloaded blobs over ones that
+ * were read once. A blob is only admitted on its second read within the last
+ * {@value #ADMISSION_WINDOW} blobs missed, so content read once is served from storage without
+ * allocating a direct buffer for it. Hits and misses are published as the cache.* meters of the
+ * blob-content cache, the bytes held as storage.content-cache.size.
+ * <p>
+ * Blobs are addressed by content, so a cached entry can only go stale when the content is deleted
+ * and stored again with another codec. {@link BlobStore} invalidates it when it deletes the content.
+ * The memory of an evicted buffer is returned once the collector finds the buffer unreachable.
+ */
+@Component
+public class BlobContentCache {
+    static final int ADMISSION_WINDOW = 10_000;
+
+    private final boolean enabled;
+    private final long maxFileSize;
+    private final Cache<Key, ByteBuffer> contents;
+    // blobs missed once recently, the next miss of one of them loads it
+    private final Cache<Key, Boolean> seenOnce = Caffeine.newBuilder()
+            .maximumSize(ADMISSION_WINDOW)
+            .build();
+
+    public BlobContentCache(ContentCacheProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.enabled();
+        this.maxFileSize = properties.maxFileSize().toBytes();
+        this.contents = Caffeine.newBuilder()
+                .maximumWeight(properties.maxSize().toBytes())
+                .weigher((Key key, ByteBuffer content) -> content.capacity())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, contents, "blob-content");
+        Gauge.builder("storage.content-cache.size", contents,
+                        cache -> cache.policy().eviction().orElseThrow().weightedSize().orElse(0))
+                .baseUnit(BaseUnits.BYTES)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the stored bytes of the blob as a read-only buffer of its own, reading them with the
+     * loader on a repeated miss. Returns null when the cache is disabled, the blob is too large for
+     * it or it is the blob's first miss; the caller reads the content from storage then.
+     */
+    public ByteBuffer get(Blob blob, ContentLoader loader) throws IOException {
+        if (!enabled || blob.getStoredSize() > maxFileSize) {
+            return null;
+        }
+        Key key = new Key(blob.getDigest(), blob.getCodec());
+        ByteBuffer content = contents.getIfPresent(key);
+        if (content == null) {
+            if (seenOnce.asMap().remove(key) == null) {
+                seenOnce.put(key, Boolean.TRUE);
+                return null;
+            }
+            // read outside the map, computeIfAbsent would block its bin and pin a virtual thread's
+            // carrier for the whole read; through the map view, so the miss is not counted twice
+            ByteBuffer loaded = load(loader);
+            ByteBuffer cached = contents.asMap().putIfAbsent(key, loaded);
+            content = cached != null ? cached : loaded;
+        }
+        return content.asReadOnlyBuffer();
+    }
+
+    public void invalidate(String digest) {
+        for (Blob.Codec codec : Blob.Codec.values()) {
+            contents.invalidate(new Key(digest, codec));
+            seenOnce.invalidate(new Key(digest, codec));
+        }
+    }
+
+    private static ByteBuffer load(ContentLoader loader) throws IOException {
+        // the heap copy is short-lived, only the direct buffer stays
+        try (InputStream in = loader.open()) {
+            byte[] bytes = in.readAllBytes();
+            return ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        }
+    }
+
+    @FunctionalInterface
+    public interface ContentLoader {
+        InputStream open() throws IOException;
+    }
+
+    private record Key(String digest, Blob.Codec codec) {
+    }
+}
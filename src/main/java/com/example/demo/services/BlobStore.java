@@ -0,0 +1,392 @@
+package com.example.demo.services;
+
+import com.example.demo.entities.Blob;
+import com.example.demo.repositories.BlobRepository;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content-addressed storage: every distinct content is kept once under its SHA-256 digest
+ * as blobs/ab/cd/&lt;digest&gt; in the {@link StorageBackend} and shared by all File rows that reference it.
+ * The blob row carries a reference count, the content is removed when it drops to zero.
+ * Compressible content is kept gzipped, see {@link CompressionPolicy}.
+ * <p>
+ * Taking the first reference (which inserts the row) and dropping the last one (which deletes the
+ * row and the content) are serialized per digest across all instances: each runs in one
+ * transaction that holds a Postgres advisory lock on the digest until the row change is committed.
+ * Striped in-process locks in front of it keep threads of one instance off the database lock.
+ * New content is written before that, without any lock or connection held, by a put that never
+ * replaces an existing copy; the locked step only checks that the copy is still in place.
+ */
+@Service
+public class BlobStore {
+    // uploads are spooled here, within the backend's spool, until their digest is known
+    private static final String SPOOL_AREA = "blobs";
+    private static final int LOCK_STRIPES = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final BlobRepository blobRepository;
+    private final CompressionPolicy compressionPolicy;
+    private final BlobContentCache contentCache;
+    private final StorageBackend storage;
+    private final TransactionOperations transactions;
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    public BlobStore(BlobRepository blobRepository, CompressionPolicy compressionPolicy,
+                     BlobContentCache contentCache, StorageBackend storage, TransactionOperations transactions) {
+        this.blobRepository = blobRepository;
+        this.compressionPolicy = compressionPolicy;
+        this.contentCache = contentCache;
+        this.storage = storage;
+        this.transactions = transactions;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Streams the content into a temp file while hashing it and takes a reference on the
+     * resulting blob. Content that is already stored only costs a reference count update.
+     * Compressible content is gzipped on the way, the digest is always that of the original bytes.
+     */
+    public Blob store(InputStream in, MediaType contentType) throws IOException {
+        return store(in, contentType, digest -> { });
+    }
+
+    /**
+     * Like {@link #store(InputStream, MediaType)}, and hands the digest to the listener as soon as it
+     * is known, before any content or reference count for it changes. This is where the caller
+     * journals which blob the operation touches.
+     */
+    public Blob store(InputStream in, MediaType contentType, Consumer<String> digestListener) throws IOException {
+        Path tempFile = createTempFile();
+        try {
+            MessageDigest digest = newDigest();
+            InputStream content = new DigestInputStream(in, digest);
+            byte[] sample = content.readNBytes(compressionPolicy.sampleSize());
+            Blob.Codec codec = compressionPolicy.choose(contentType, sample);
+            long size = sample.length;
+            try (OutputStream out = encode(codec, Files.newOutputStream(tempFile))) {
+                out.write(sample);
+                size += content.transferTo(out);
+            }
+            return ingest(tempFile, HexFormat.of().formatHex(digest.digest()), size, codec, digestListener);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Takes a reference on the content of a file that is already on disk. The source is handed
+     * to the storage backend (or dropped if the content is known), which moves it into place when
+     * it is on the same volume.
+     * Compressible content is rewritten compressed instead of moved.
+     */
+    public Blob store(Path source, MediaType contentType) throws IOException {
+        return store(source, contentType, digest -> { });
+    }
+
+    /**
+     * Like {@link #store(Path, MediaType)}, with the digest listener of {@link #store(InputStream, MediaType, Consumer)}.
+     */
+    public Blob store(Path source, MediaType contentType, Consumer<String> digestListener) throws IOException {
+        byte[] sample;
+        try (InputStream in = Files.newInputStream(source)) {
+            sample = in.readNBytes(compressionPolicy.sampleSize());
+        }
+        if (compressionPolicy.choose(contentType, sample) != Blob.Codec.IDENTITY) {
+            try (InputStream in = Files.newInputStream(source)) {
+                return store(in, contentType, digestListener);
+            } finally {
+                Files.deleteIfExists(source);
+            }
+        }
+
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(source), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        try {
+            return ingest(source, HexFormat.of().formatHex(digest.digest()), Files.size(source), Blob.Codec.IDENTITY,
+                    digestListener);
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    /**
+     * Opens the original content of the blob, decompressing it if it is stored compressed.
+     */
+    public InputStream open(Blob blob) throws IOException {
+        ByteBuffer cached = cached(blob);
+        InputStream in = cached != null ? new ByteBufferResource(cached).getInputStream() : storage.get(key(blob));
+        return switch (blob.getCodec()) {
+            case IDENTITY -> in;
+            case GZIP -> new GZIPInputStream(in, BUFFER_SIZE);
+        };
+    }
+
+    /**
+     * Stored bytes of a small blob from the content cache, still compressed if the blob is.
+     * Returns null when the blob is not eligible for caching or not read often enough to be cached
+     * yet, it has to be read from disk then.
+     */
+    public ByteBuffer cached(Blob blob) throws IOException {
+        return contentCache.get(blob, () -> storage.get(key(blob)));
+    }
+
+    /**
+     * The stored bytes of the blob for serving them as they are, see {@link StorageBackend#resource}.
+     */
+    public Resource resource(Blob blob) throws IOException {
+        return storage.resource(key(blob));
+    }
+
+    /**
+     * Drops one reference and deletes the content once nothing refers to it anymore.
+     */
+    public void release(Blob blob) throws IOException {
+        ReentrantLock lock = lockFor(blob.getDigest());
+        lock.lock();
+        try {
+            locked(List.of(blob.getDigest()), () -> {
+                blobRepository.decrementRefCount(blob.getDigest());
+                if (blobRepository.deleteIfUnreferenced(blob.getDigest()) > 0) {
+                    contentCache.invalidate(blob.getDigest());
+                    storage.delete(key(blob.getDigest()));
+                }
+                return null;
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops one reference per entry, a digest listed several times loses several references.
+     * Takes a constant number of statements however many blobs are involved, the content of
+     * blobs that end up unreferenced is deleted in parallel.
+     */
+    public void releaseAll(Collection<String> digests) throws IOException {
+        if (digests.isEmpty()) {
+            return;
+        }
+        Map<String, Long> references = digests.stream()
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        // stripes are always taken in index order, so concurrent batches cannot deadlock
+        int[] stripes = references.keySet().stream().mapToInt(this::stripeFor).distinct().sorted().toArray();
+        for (int stripe : stripes) {
+            locks[stripe].lock();
+        }
+        try {
+            locked(references.keySet(), () -> {
+                for (long round = 1; ; round++) {
+                    long count = round;
+                    List<String> remaining = references.entrySet().stream()
+                            .filter(entry -> entry.getValue() >= count)
+                            .map(Map.Entry::getKey)
+                            .toList();
+                    if (remaining.isEmpty()) {
+                        break;
+                    }
+                    blobRepository.decrementRefCounts(remaining);
+                }
+                List<String> unreferenced = blobRepository.findUnreferenced(references.keySet());
+                if (!unreferenced.isEmpty()) {
+                    blobRepository.deleteUnreferenced(unreferenced);
+                    unreferenced.forEach(contentCache::invalidate);
+                    storage.deleteAll(unreferenced.stream().map(BlobStore::key).toList());
+                }
+                return null;
+            });
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                locks[stripes[i]].unlock();
+            }
+        }
+    }
+
+    /**
+     * Brings the blob of an interrupted operation back in line with the file table: the reference
+     * count is recounted from the files that point at it, and content that nothing refers to is
+     * deleted, including content that was stored without its row ever being written. Nothing is
+     * changed while {@code pending} reports an operation on the digest that is still running. It is
+     * asked while holding the digest's advisory lock; uploads record their digest before they wait
+     * for that lock, so an upload on any instance is either seen here or starts after the repair.
+     *
+     * @return false if the blob was left alone because of a pending operation
+     */
+    public boolean reconcile(String digest, BooleanSupplier pending) throws IOException {
+        ReentrantLock lock = lockFor(digest);
+        lock.lock();
+        try {
+            return locked(List.of(digest), () -> {
+                if (pending.getAsBoolean()) {
+                    return false;
+                }
+                if (blobRepository.recount(digest) == 0 || blobRepository.deleteIfUnreferenced(digest) > 0) {
+                    contentCache.invalidate(digest);
+                    storage.delete(key(digest));
+                }
+                return true;
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes spooled uploads left behind by a crash. Uploads in progress write to their temp file
+     * continuously, so only files that were not modified since the given time are removed.
+     *
+     * @return the number of files deleted
+     */
+    public int purgeTempFiles(Instant before) throws IOException {
+        int purged = 0;
+        for (Path spool : storage.spoolDirectories()) {
+            Path directory = spool.resolve(SPOOL_AREA);
+            if (!Files.isDirectory(directory)) {
+                continue;
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    if (Files.getLastModifiedTime(file).toInstant().isBefore(before) && Files.deleteIfExists(file)) {
+                        purged++;
+                    }
+                }
+            }
+        }
+        return purged;
+    }
+
+    public static String key(Blob blob) {
+        return key(blob.getDigest());
+    }
+
+    static String key(String digest) {
+        return "blobs/" + digest.substring(0, 2) + "/" + digest.substring(2, 4) + "/" + digest;
+    }
+
+    private Blob ingest(Path tempFile, String digest, long size, Blob.Codec codec,
+                        Consumer<String> digestListener) throws IOException {
+        // journaled first, so a copy this leaves behind is found by the reconciler
+        digestListener.accept(digest);
+        // a release deleting the row holds it locked until it commits, the update then finds nothing
+        if (blobRepository.incrementRefCount(digest) > 0) {
+            return blobRepository.getReferenceById(digest);
+        }
+        // a concurrent upload of the same content may store it with another codec, neither replaces the other
+        boolean stored = storage.putIfAbsent(key(digest), tempFile);
+        long storedSize = Files.size(tempFile);
+
+        ReentrantLock lock = lockFor(digest);
+        lock.lock();
+        try {
+            return locked(List.of(digest), () -> {
+                if (blobRepository.incrementRefCount(digest) > 0) {
+                    // the other upload's row and copy won, the source is an extra copy the caller deletes
+                    return blobRepository.getReferenceById(digest);
+                }
+                // a copy that was already there belongs to no row, and ours may have been deleted
+                // by a release in the meantime: only then is the content written under the lock
+                if (!stored || !storage.resource(key(digest)).exists()) {
+                    storage.put(key(digest), tempFile);
+                }
+                blobRepository.insertOrReference(digest, size, codec.name(), storedSize);
+                return blobRepository.getReferenceById(digest);
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the action in one transaction that first takes the advisory lock of every digest, in
+     * key order so that concurrent batches cannot deadlock. The locks are released by the commit,
+     * after the action's row changes. Failures roll the row changes back.
+     */
+    private <T> T locked(Collection<String> digests, LockedAction<T> action) throws IOException {
+        try {
+            return transactions.execute(status -> {
+                digests.stream().mapToLong(BlobStore::lockKey).distinct().sorted().forEach(blobRepository::lock);
+                try {
+                    return action.run();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    private interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    // digests are uniformly distributed, their first 64 bits make a good advisory lock key
+    private static long lockKey(String digest) {
+        return Long.parseUnsignedLong(digest.substring(0, 16), 16);
+    }
+
+    private OutputStream encode(Blob.Codec codec, OutputStream out) throws IOException {
+        return switch (codec) {
+            case IDENTITY -> out;
+            case GZIP -> new GZIPOutputStream(out, BUFFER_SIZE) {
+                {
+                    def.setLevel(compressionPolicy.level());
+                }
+            };
+        };
+    }
+
+    private ReentrantLock lockFor(String digest) {
+        return locks[stripeFor(digest)];
+    }
+
+    private int stripeFor(String digest) {
+        return Math.floorMod(digest.hashCode(), LOCK_STRIPES);
+    }
+
+    private Path createTempFile() throws IOException {
+        Path tempFile = storage.spoolFile(SPOOL_AREA + "/.upload-" + UUID.randomUUID() + ".tmp");
+        Files.createDirectories(tempFile.getParent());
+        return Files.createFile(tempFile);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
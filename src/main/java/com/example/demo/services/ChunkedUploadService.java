@@ -0,0 +1,186 @@
+package com.example.demo.services;
+
+import com.example.demo.entities.UploadPart;
+import com.example.demo.entities.UploadSession;
+import com.example.demo.entities.User;
+import com.example.demo.repositories.FileRepository;
+import com.example.demo.repositories.UploadPartRepository;
+import com.example.demo.repositories.UploadSessionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Resumable uploads: the client initiates a session, sends numbered parts in any order and in
+ * parallel, and completes the session once every part has arrived. Parts are written at their
+ * offsets into a preallocated staging file in the storage backend's spool, received part numbers
+ * are tracked in the database.
+ */
+@Service
+public class ChunkedUploadService {
+    static final long MIN_PART_SIZE = 1024 * 1024;
+    static final long MAX_PART_SIZE = 512L * 1024 * 1024;
+    private static final Duration SESSION_TTL = Duration.ofHours(24);
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UploadPartRepository uploadPartRepository;
+    private final FileRepository fileRepository;
+    private final FileService fileService;
+    private final StorageBackend storage;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public ChunkedUploadService(UploadSessionRepository uploadSessionRepository,
+                                UploadPartRepository uploadPartRepository,
+                                FileRepository fileRepository,
+                                FileService fileService,
+                                StorageBackend storage) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.uploadPartRepository = uploadPartRepository;
+        this.fileRepository = fileRepository;
+        this.fileService = fileService;
+        this.storage = storage;
+    }
+
+    public UploadSession initiate(String filename, long size, long partSize, User user) {
+        if (size <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "File is empty");
+        }
+        if (partSize < MIN_PART_SIZE || partSize > MAX_PART_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Part size must be between 1MB and 512MB");
+        }
+        if (fileRepository.existsByFilenameAndUserId(filename, user.getId())) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "File with this name already exists");
+        }
+        fileService.checkQuota(user, size);
+
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setFilename(filename);
+        session.setSize(size);
+        session.setPartSize(partSize);
+        session.setCreatedAt(Instant.now());
+        session.setUser(user);
+        try {
+            Path stagingFile = stagingFile(session.getId());
+            Files.createDirectories(stagingFile.getParent());
+            try (RandomAccessFile file = new RandomAccessFile(stagingFile.toFile(), "rw")) {
+                file.setLength(size);
+            }
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error saving file to disk: " + e.getMessage());
+        }
+        return uploadSessionRepository.save(session);
+    }
+
+    /**
+     * Writes one part at its offset. Parts of the same session may be uploaded concurrently,
+     * each request writes through its own channel into a disjoint region of the staging file.
+     * Re-sending a part that already arrived overwrites it, which makes retries safe.
+     */
+    public void uploadPart(String uploadId, int partNumber, InputStream body, User user) {
+        UploadSession session = findSession(uploadId, user);
+        if (partNumber < 1 || partNumber > session.getPartCount()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid part number");
+        }
+        long offset = (partNumber - 1) * session.getPartSize();
+        long expected = Math.min(session.getPartSize(), session.getSize() - offset);
+
+        try (FileChannel channel = FileChannel.open(stagingFile(uploadId), StandardOpenOption.WRITE);
+             ReadableByteChannel source = Channels.newChannel(body)) {
+            long written = 0;
+            while (written < expected) {
+                long transferred = channel.transferFrom(source, offset + written, expected - written);
+                if (transferred == 0) {
+                    break;
+                }
+                written += transferred;
+            }
+            if (written != expected || body.read() != -1) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Part must be exactly " + expected + " bytes");
+            }
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error saving file to disk: " + e.getMessage());
+        }
+
+        if (!uploadPartRepository.existsBySessionIdAndPartNumber(uploadId, partNumber)) {
+            UploadPart part = new UploadPart();
+            part.setSession(session);
+            part.setPartNumber(partNumber);
+            try {
+                uploadPartRepository.save(part);
+            } catch (DataIntegrityViolationException e) {
+                // a concurrent retry of the same part recorded it first
+            }
+        }
+    }
+
+    public UploadSession getSession(String uploadId, User user) {
+        return findSession(uploadId, user);
+    }
+
+    public List<Integer> receivedParts(String uploadId) {
+        return uploadPartRepository.findPartNumbers(uploadId);
+    }
+
+    public void complete(String uploadId, User user) {
+        UploadSession session = findSession(uploadId, user);
+        if (uploadPartRepository.countBySessionId(uploadId) != session.getPartCount()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Not all parts have been uploaded");
+        }
+        fileService.addAssembledFile(session.getFilename(), stagingFile(uploadId), user);
+        deleteSession(session);
+    }
+
+    public void abort(String uploadId, User user) {
+        deleteSession(findSession(uploadId, user));
+    }
+
+    @Scheduled(fixedDelay = 60 * 60 * 1000)
+    public void purgeExpiredSessions() {
+        for (UploadSession session : uploadSessionRepository.findByCreatedAtBefore(Instant.now().minus(SESSION_TTL))) {
+            logger.info("Purging expired upload session {}", session.getId());
+            deleteSession(session);
+        }
+    }
+
+    private UploadSession findSession(String uploadId, User user) {
+        UploadSession session = uploadSessionRepository.findById(uploadId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload not found"));
+        if (session.getUser().getId() != user.getId()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload not found");
+        }
+        return session;
+    }
+
+    private void deleteSession(UploadSession session) {
+        uploadPartRepository.deleteBySessionId(session.getId());
+        uploadSessionRepository.delete(session);
+        try {
+            Files.deleteIfExists(stagingFile(session.getId()));
+        } catch (IOException e) {
+            logger.warn("Error deleting staging file of upload session {}", session.getId(), e);
+        }
+    }
+
+    private Path stagingFile(String uploadId) {
+        return storage.spoolFile("uploads/" + uploadId);
+    }
+}
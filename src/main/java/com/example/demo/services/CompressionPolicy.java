@@ -0,0 +1,73 @@
+package com.example.demo.services;
+
+import com.example.demo.config.CompressionProperties;
+import com.example.demo.entities.Blob;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Decides per upload whether content is stored compressed. Text-like media types always are,
+ * media and archive types never are, anything else is decided by deflating a sample of its start.
+ */
+@Component
+public class CompressionPolicy {
+    private static final int MIN_SIZE = 1024;
+    private static final Set<String> COMPRESSIBLE_SUBTYPES = Set.of(
+            "json", "xml", "javascript", "x-javascript", "csv", "x-ndjson", "yaml", "x-yaml", "sql", "x-sh");
+    private static final Set<String> MEDIA_TYPES = Set.of("image", "audio", "video");
+    private static final Set<String> INCOMPRESSIBLE_SUBTYPES = Set.of(
+            "zip", "gzip", "x-gzip", "zstd", "x-bzip2", "x-xz", "x-7z-compressed", "x-rar-compressed", "pdf");
+
+    private final CompressionProperties properties;
+
+    public CompressionPolicy(CompressionProperties properties) {
+        this.properties = properties;
+    }
+
+    public int sampleSize() {
+        return (int) properties.sampleSize().toBytes();
+    }
+
+    public int level() {
+        return properties.level();
+    }
+
+    /**
+     * @param sample the first {@link #sampleSize()} bytes of the content, or all of it if it is shorter
+     */
+    public Blob.Codec choose(MediaType contentType, byte[] sample) {
+        if (!properties.enabled() || sample.length < MIN_SIZE) {
+            return Blob.Codec.IDENTITY;
+        }
+        if (contentType != null) {
+            String subtype = contentType.getSubtype();
+            if ("text".equals(contentType.getType()) || COMPRESSIBLE_SUBTYPES.contains(subtype)
+                    || subtype.endsWith("+json") || subtype.endsWith("+xml")) {
+                return Blob.Codec.GZIP;
+            }
+            if (MEDIA_TYPES.contains(contentType.getType()) && !"bmp".equals(subtype)
+                    || INCOMPRESSIBLE_SUBTYPES.contains(subtype)) {
+                return Blob.Codec.IDENTITY;
+            }
+        }
+        return deflatedSize(sample) <= sample.length * properties.maxRatio() ? Blob.Codec.GZIP : Blob.Codec.IDENTITY;
+    }
+
+    private static long deflatedSize(byte[] sample) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                deflater.deflate(buffer);
+            }
+            return deflater.getBytesWritten();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.demo.services;
+
+import com.example.demo.config.DeletionProperties;
+import com.example.demo.dto.DeletedFile;
+import com.example.demo.repositories.FileRepository;
+import com.example.demo.repositories.StorageIntentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes deleted files for good once their undelete window is over. Deleting a file on a request
+ * only marks its row, the rows and their content are purged here in batches: one statement per
+ * batch, then the blob releases and the disk deletes of the whole batch in parallel. Batches are
+ * paced to storage.deletion.max-files-per-second, so a mass delete drains steadily instead of
+ * competing with uploads and downloads for the disks.
+ * <p>
+ * The number of deleted files waiting to be purged, including those still in their undelete
+ * window, is published as storage.deletion.queue.
+ */
+@Service
+public class DeletionPipeline {
+    private final FileRepository fileRepository;
+    private final BlobStore blobStore;
+    private final StorageBackend storage;
+    private final StorageIntentRepository intentRepository;
+    private final DeletionProperties properties;
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final Counter purgedFiles;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private volatile Thread worker;
+
+    public DeletionPipeline(FileRepository fileRepository, BlobStore blobStore, StorageBackend storage,
+                            StorageIntentRepository intentRepository, DeletionProperties properties,
+                            MeterRegistry registry) {
+        this.fileRepository = fileRepository;
+        this.blobStore = blobStore;
+        this.storage = storage;
+        this.intentRepository = intentRepository;
+        this.properties = properties;
+        Gauge.builder("storage.deletion.queue", queueDepth, AtomicLong::get)
+                .description("Deleted files that are not purged yet")
+                .register(registry);
+        this.purgedFiles = Counter.builder("storage.deletion.purged")
+                .description("Deleted files whose row and content were removed")
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        worker = Thread.ofVirtual().name("deletion-pipeline").start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() {
+        Thread current = worker;
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+
+    /**
+     * Purges up to one batch of files whose undelete window is over. The purge statement journals
+     * the blobs it drops, so if releasing them fails the {@link StorageReconciler} finishes the job.
+     *
+     * @return the number of files purged
+     */
+    public int purgeBatch() throws IOException {
+        queueDepth.set(fileRepository.countDeleted());
+        UUID operation = UUID.randomUUID();
+        List<DeletedFile> purged = fileRepository.purgeDeleted(
+                Instant.now().minus(properties.undeleteWindow()), properties.batchSize(), operation);
+        if (purged.isEmpty()) {
+            return 0;
+        }
+        List<String> digests = new ArrayList<>();
+        List<String> legacyFiles = new ArrayList<>();
+        for (DeletedFile file : purged) {
+            if (file.getBlobDigest() != null) {
+                digests.add(file.getBlobDigest());
+            } else {
+                legacyFiles.add(FileService.legacyKey(file.getUserId(), file.getFilename()));
+            }
+        }
+        blobStore.releaseAll(digests);
+        storage.deleteAll(legacyFiles);
+        intentRepository.close(operation);
+        purgedFiles.increment(purged.size());
+        queueDepth.addAndGet(-purged.size());
+        return purged.size();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Duration pause;
+            try {
+                long start = System.nanoTime();
+                int purged = purgeBatch();
+                // a full batch means more are due, the next one starts as soon as the rate allows
+                pause = purged < properties.batchSize() ? properties.pollInterval()
+                        : Duration.ofSeconds(purged).dividedBy(properties.maxFilesPerSecond())
+                                .minusNanos(System.nanoTime() - start);
+            } catch (Exception e) {
+                logger.error("Error purging deleted files", e);
+                pause = properties.pollInterval();
+            }
+            try {
+                if (pause.isPositive()) {
+                    Thread.sleep(pause);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
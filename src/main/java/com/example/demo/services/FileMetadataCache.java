@@ -0,0 +1,53 @@
+package com.example.demo.services;
+
+import com.example.demo.config.MetadataCacheProperties;
+import com.example.demo.entities.File;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of file rows by (user id, filename). Only existing files are cached.
+ * Hits, misses and evictions are published as the cache.* meters of the file-metadata cache.
+ * <p>
+ * Invalidate after the database change: a concurrent load of the same key either finishes before
+ * the invalidation, which then removes it, or starts after it and reads the changed row.
+ */
+@Component
+public class FileMetadataCache {
+    private final Cache<Key, File> files;
+
+    public FileMetadataCache(MetadataCacheProperties properties, MeterRegistry meterRegistry) {
+        this.files = Caffeine.newBuilder()
+                .maximumSize(properties.maximumSize())
+                .expireAfterWrite(properties.ttl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, files, "file-metadata");
+    }
+
+    /**
+     * Returns the cached file, or loads it and caches it if the loader finds one. Every call gets
+     * its own copy, callers may change it without affecting the cached row or other requests.
+     */
+    public File get(int userId, String filename, Supplier<File> loader) {
+        File file = files.get(new Key(userId, filename), key -> loader.get());
+        return file != null ? file.copy() : null;
+    }
+
+    public void invalidate(int userId, String filename) {
+        files.invalidate(new Key(userId, filename));
+    }
+
+    public void invalidateAll(int userId, Collection<String> filenames) {
+        files.invalidateAll(filenames.stream().map(filename -> new Key(userId, filename)).toList());
+    }
+
+    private record Key(int userId, String filename) {
+    }
+}
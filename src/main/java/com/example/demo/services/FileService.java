@@ -1,28 +1,80 @@
 package com.example.demo.services;
 
+import com.example.demo.dto.BatchResult;
+import com.example.demo.dto.DeletedFile;
+import com.example.demo.dto.FileListItem;
+import com.example.demo.dto.FilePage;
+import com.example.demo.dto.FileSearch;
+import com.example.demo.dto.FileSort;
+import com.example.demo.dto.StorageUsage;
+import com.example.demo.entities.Blob;
 import com.example.demo.entities.File;
 import com.example.demo.repositories.FileRepository;
 import com.example.demo.entities.User;
+import com.example.demo.repositories.StorageIntentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.logging.Logger;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @Service
 public class FileService {
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int MAX_BATCH_SIZE = 1000;
+
     private final FileRepository fileRepository;
-    private final Logger logger = Logger.getLogger(this.getClass().getName());
+    private final BlobStore blobStore;
+    private final StorageBackend storage;
+    private final QuotaService quotaService;
+    private final TransferMetrics transferMetrics;
+    private final FileMetadataCache metadataCache;
+    private final StorageIntentRepository intentRepository;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    public FileService(FileRepository fileRepository) {
+    public FileService(FileRepository fileRepository, BlobStore blobStore, StorageBackend storage,
+                       QuotaService quotaService, TransferMetrics transferMetrics, FileMetadataCache metadataCache,
+                       StorageIntentRepository intentRepository) {
         this.fileRepository = fileRepository;
+        this.blobStore = blobStore;
+        this.storage = storage;
+        this.quotaService = quotaService;
+        this.transferMetrics = transferMetrics;
+        this.metadataCache = metadataCache;
+        this.intentRepository = intentRepository;
     }
 
     public void addNewFile(String filename, MultipartFile file, User user) {
@@ -33,24 +85,16 @@ public class FileService {
             if (file.isEmpty()) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "File is empty");
             }
-            boolean fileExists = fileRepository.existsByFilenameAndUserId(filename, user.getId());
-            if (fileExists) {
-                throw new ResponseStatusException(HttpStatus.CONFLICT, "File with this name already exists");
-            }
-            Path userDirectory = Paths.get("file-storage", String.valueOf(user.getId()));
-            if (!Files.exists(userDirectory)) {
-                Files.createDirectories(userDirectory);
-            }
-            Path filePath = userDirectory.resolve(filename);
-            Files.write(filePath, file.getBytes());
-            File fileEntity = new File();
-            logger.info("Uploaded file size: " + file.getSize());
-            fileEntity.setFilename(filename);
-            fileEntity.setSize(file.getSize());
-            fileEntity.setUser(user);
-            fileRepository.save(fileEntity);
+            // a taken name is rejected by the unique constraint on insert, the stored content is released then
+            storeFile(filename, file.getSize(), user, digestListener -> {
+                try (InputStream in = file.getInputStream()) {
+                    return blobStore.store(in, mediaType(filename, file.getContentType()), digestListener);
+                }
+            });
         } catch (IOException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error saving file to disk: " + e.getMessage());
+        } catch (DataIntegrityViolationException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "File with this name already exists");
         } catch (ResponseStatusException e) {
             throw e;
         } catch (Exception e) {
@@ -58,11 +102,472 @@ public class FileService {
         }
     }
 
-    public List<File> findByUser(User user) {
-        return fileRepository.findByUser(user);
+    /**
+     * Stores several uploaded files under their original filenames. Names are checked against the
+     * existing files in one query, each file succeeds or fails on its own.
+     */
+    public BatchResult addNewFiles(List<MultipartFile> files, User user) {
+        checkBatchSize(files.size());
+        List<String> filenames = files.stream().map(MultipartFile::getOriginalFilename).filter(Objects::nonNull).toList();
+        Set<String> taken = new HashSet<>(fileRepository.findExistingFilenames(user.getId(), filenames));
+
+        List<String> uploaded = new ArrayList<>();
+        List<BatchResult.Failure> failed = new ArrayList<>();
+        for (MultipartFile file : files) {
+            String filename = file.getOriginalFilename();
+            if (filename == null || filename.isBlank()) {
+                failed.add(new BatchResult.Failure(filename, "Filename is required", 400));
+            } else if (file.isEmpty()) {
+                failed.add(new BatchResult.Failure(filename, "File is empty", 400));
+            } else if (!taken.add(filename)) {
+                failed.add(new BatchResult.Failure(filename, "File with this name already exists", 409));
+            } else {
+                try {
+                    storeFile(filename, file.getSize(), user, digestListener -> {
+                        try (InputStream in = file.getInputStream()) {
+                            return blobStore.store(in, mediaType(filename, file.getContentType()), digestListener);
+                        }
+                    });
+                    uploaded.add(filename);
+                } catch (IOException e) {
+                    failed.add(new BatchResult.Failure(filename, "Error saving file to disk", 500));
+                } catch (ResponseStatusException e) {
+                    failed.add(new BatchResult.Failure(filename, e.getReason(), e.getStatusCode().value()));
+                } catch (DataIntegrityViolationException e) {
+                    failed.add(new BatchResult.Failure(filename, "File with this name already exists", 409));
+                }
+            }
+        }
+        return new BatchResult(uploaded, failed);
     }
 
+    /**
+     * Registers a file that was already assembled on disk, e.g. by a chunked upload.
+     * The source is moved into the blob store, so it must live on the same volume.
+     */
+    public void addAssembledFile(String filename, Path source, User user) {
+        try {
+            storeFile(filename, Files.size(source), user,
+                    digestListener -> blobStore.store(source, mediaType(filename, null), digestListener));
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error saving file to disk: " + e.getMessage());
+        } catch (DataIntegrityViolationException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "File with this name already exists");
+        }
+    }
+
+    /**
+     * Returns one page of the user's files in the given order. The cursor is the opaque
+     * {@link FilePage#nextCursor()} of the previous page, or null for the first page.
+     */
+    public FilePage listFiles(User user, FileSort sort, String cursor, int limit) {
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be positive");
+        }
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+        String[] position = cursor == null ? null : decodeCursor(cursor, sort);
+        Limit fetch = Limit.of(pageSize + 1);
+        List<FileListItem> files;
+        try {
+            files = switch (sort) {
+                case NAME -> fileRepository.findPageByFilename(user.getId(), position == null ? "" : position[2], fetch);
+                case SIZE -> fileRepository.findPageBySize(user.getId(),
+                        position == null ? -1 : Long.parseLong(position[2]),
+                        position == null ? 0 : Integer.parseInt(position[1]), fetch);
+                case ID -> fileRepository.findPageById(user.getId(), position == null ? 0 : Integer.parseInt(position[1]), fetch);
+            };
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+
+        if (files.size() <= pageSize) {
+            return new FilePage(files, null);
+        }
+        files = files.subList(0, pageSize);
+        return new FilePage(files, encodeCursor(sort, files.get(pageSize - 1)));
+    }
+
+    /**
+     * Returns one page of the user's files that match the search, ordered by name. The cursor is
+     * the {@link FilePage#nextCursor()} of the previous page of the same search, or null.
+     */
+    public FilePage searchFiles(User user, FileSearch search, String cursor, int limit) {
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be positive");
+        }
+        long minSize = search.minSize() != null ? search.minSize() : 0;
+        long maxSize = search.maxSize() != null ? search.maxSize() : Long.MAX_VALUE;
+        if (minSize > maxSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Minimum size is larger than maximum size");
+        }
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+        String after = cursor == null ? "" : decodeCursor(cursor, FileSort.NAME)[2];
+        List<FileListItem> files = fileRepository.searchPageByFilename(user.getId(),
+                likePattern(search.name(), search.match()), minSize, maxSize,
+                search.uploadedAfter(), search.uploadedBefore(), after, Limit.of(pageSize + 1));
+
+        if (files.size() <= pageSize) {
+            return new FilePage(files, null);
+        }
+        files = files.subList(0, pageSize);
+        return new FilePage(files, encodeCursor(FileSort.NAME, files.get(pageSize - 1)));
+    }
+
+    /**
+     * Looks the file up through the metadata cache, repeated lookups of the same file do not query the database.
+     */
     public Optional<File> findByUserAndFilename(User user, String filename) {
-        return fileRepository.findByUserAndFilename(user, filename);
+        return Optional.ofNullable(metadataCache.get(user.getId(), filename,
+                () -> fileRepository.findByUserAndFilename(user, filename).orElse(null)));
+    }
+
+    /**
+     * The stored content of the file as it is kept, see {@link StorageBackend#resource}: the shared
+     * blob, or the per-user object of files uploaded before the blob store existed.
+     */
+    public Resource storedContent(File file, User user) throws IOException {
+        if (file.getBlob() != null) {
+            return blobStore.resource(file.getBlob());
+        }
+        Resource legacy = storage.resource(legacyKey(user, file.getFilename()));
+        if (!legacy.exists() && reloadMovedFile(file, user)) {
+            return blobStore.resource(file.getBlob());
+        }
+        return legacy;
+    }
+
+    /**
+     * Stored bytes of the file from the content cache, gzipped if the blob is stored compressed.
+     * Returns null for content that is read from disk: large blobs, blobs on their first read and
+     * files outside the blob store.
+     */
+    public ByteBuffer cachedContent(File file) throws IOException {
+        return file.getBlob() != null ? blobStore.cached(file.getBlob()) : null;
+    }
+
+    /**
+     * Looks up the named files, in the order given. Fails if any of them does not exist.
+     */
+    public List<File> findFiles(User user, Collection<String> filenames) {
+        checkBatchSize(filenames.size());
+        Map<String, File> files = new HashMap<>();
+        for (File file : fileRepository.findByUserIdAndFilenameIn(user.getId(), filenames)) {
+            files.put(file.getFilename(), file);
+        }
+        List<File> found = new ArrayList<>();
+        for (String filename : new LinkedHashSet<>(filenames)) {
+            File file = files.get(filename);
+            if (file == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "File not found: " + filename);
+            }
+            found.add(file);
+        }
+        return found;
+    }
+
+    /**
+     * Opens the original content of the file, decompressed if it is stored compressed.
+     */
+    public InputStream openContent(File file, User user) throws IOException {
+        if (file.getBlob() != null) {
+            return blobStore.open(file.getBlob());
+        }
+        try {
+            return storage.get(legacyKey(user, file.getFilename()));
+        } catch (NoSuchFileException e) {
+            if (reloadMovedFile(file, user)) {
+                return blobStore.open(file.getBlob());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A legacy file whose old copy is gone was moved into the blob store after its row was read,
+     * possibly by another instance whose cache invalidation does not reach this one. Reloads the
+     * row and takes over its blob, if it has one by now.
+     *
+     * @return false if the file is still outside the blob store
+     */
+    private boolean reloadMovedFile(File file, User user) {
+        Blob blob = fileRepository.findById(file.getId()).map(File::getBlob).orElse(null);
+        if (blob == null) {
+            return false;
+        }
+        file.setBlob(blob);
+        metadataCache.invalidate(user.getId(), file.getFilename());
+        return true;
+    }
+
+    /**
+     * Writes the files as a ZIP archive to the stream while reading them, nothing is staged on disk.
+     * Content that is stored uncompressed did not compress well, so it is not deflated again.
+     */
+    public void writeZip(List<File> files, User user, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        for (File file : files) {
+            boolean incompressible = file.getBlob() != null && file.getBlob().getCodec() == Blob.Codec.IDENTITY;
+            zip.setLevel(incompressible ? Deflater.NO_COMPRESSION : Deflater.BEST_SPEED);
+            zip.putNextEntry(new ZipEntry(file.getFilename()));
+            try (InputStream in = openContent(file, user)) {
+                in.transferTo(zip);
+            }
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    /**
+     * Marks the file deleted and gives back its quota. The content stays until the
+     * {@link DeletionPipeline} purges the file, until then it can be restored.
+     */
+    public void deleteFile(File file, User user) {
+        UUID operation = UUID.randomUUID();
+        intentRepository.open(operation, user.getId(), null);
+        if (fileRepository.markDeleted(file.getId()) > 0) {
+            quotaService.release(user, file.getSize());
+        }
+        metadataCache.invalidate(user.getId(), file.getFilename());
+        intentRepository.close(operation);
+    }
+
+    /**
+     * Marks the named files deleted with a single statement, like {@link #deleteFile}.
+     * Names that do not exist are skipped.
+     *
+     * @return the names of the deleted files
+     */
+    public List<String> deleteFiles(Collection<String> filenames, User user) {
+        checkBatchSize(filenames.size());
+        if (filenames.isEmpty()) {
+            return List.of();
+        }
+        UUID operation = UUID.randomUUID();
+        intentRepository.open(operation, user.getId(), null);
+        List<DeletedFile> deleted = fileRepository.markDeletedByFilenames(user.getId(), filenames);
+        metadataCache.invalidateAll(user.getId(), filenames);
+        quotaService.release(user, deleted.stream().mapToLong(DeletedFile::getSize).sum());
+        intentRepository.close(operation);
+        return deleted.stream().map(DeletedFile::getFilename).toList();
+    }
+
+    /**
+     * Brings back the most recently deleted file of that name, if it was not purged yet. Its size
+     * counts against the quota again.
+     */
+    public void restoreFile(String filename, User user) {
+        DeletedFile deleted = fileRepository.findDeleted(user.getId(), filename)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Deleted file not found"));
+        UUID operation = UUID.randomUUID();
+        intentRepository.open(operation, user.getId(), null);
+        try {
+            quotaService.reserve(user, deleted.getSize());
+        } catch (RuntimeException e) {
+            intentRepository.close(operation);
+            throw e;
+        }
+        int restored;
+        try {
+            restored = fileRepository.restore(deleted.getId());
+        } catch (DataIntegrityViolationException e) {
+            quotaService.release(user, deleted.getSize());
+            intentRepository.close(operation);
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "File with this name already exists");
+        }
+        if (restored == 0) {
+            // purged since it was looked up
+            quotaService.release(user, deleted.getSize());
+            intentRepository.close(operation);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Deleted file not found");
+        }
+        metadataCache.invalidate(user.getId(), filename);
+        intentRepository.close(operation);
+    }
+
+    /**
+     * Renames the file. Blob-backed files are addressed by content, so only the row changes.
+     * A file that is still stored under its name is moved into the blob store on the way, the row
+     * update then switches name and content at once instead of following a rename on disk.
+     */
+    public void renameFile(File file, String newName, User user) throws IOException {
+        String oldName = file.getFilename();
+        try {
+            if (file.getBlob() != null) {
+                file.setFilename(newName);
+                fileRepository.save(file);
+            } else {
+                renameLegacyFile(file, newName, user);
+            }
+        } catch (DataIntegrityViolationException e) {
+            // a concurrent rename or upload took the name after the caller checked it
+            file.setFilename(oldName);
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "File with this name already exists");
+        } finally {
+            metadataCache.invalidateAll(user.getId(), List.of(oldName, newName));
+        }
+    }
+
+    /**
+     * Fails with 413 if the user has no room left for the given number of bytes.
+     */
+    public void checkQuota(User user, long size) {
+        quotaService.checkAvailable(user, size);
+    }
+
+    public StorageUsage getUsage(User user) {
+        return quotaService.usage(user);
+    }
+
+    /**
+     * Reserves the size against the user's quota before the content is written, and gives it back
+     * if storing the content or adding the row fails.
+     * <p>
+     * The upload is journaled before the quota changes and its digest before the blob does. The
+     * entry is closed once the file row is written or everything is given back; when writing the
+     * content fails it stays open, because how far the blob store got is not known here, and the
+     * reconciler repairs the blob and the quota once the grace period is over.
+     */
+    private void storeFile(String filename, long size, User user, ContentWriter content) throws IOException {
+        UUID operation = UUID.randomUUID();
+        intentRepository.open(operation, user.getId(), null);
+        try {
+            quotaService.reserve(user, size);
+        } catch (RuntimeException e) {
+            intentRepository.close(operation);
+            throw e;
+        }
+        Blob blob;
+        try {
+            long start = System.nanoTime();
+            blob = content.write(digest -> intentRepository.recordDigest(operation, digest));
+            transferMetrics.recordUpload(size, Duration.ofNanos(System.nanoTime() - start));
+        } catch (IOException | RuntimeException e) {
+            quotaService.release(user, size);
+            throw e;
+        }
+        try {
+            saveFile(filename, blob, size, user);
+        } catch (RuntimeException e) {
+            blobStore.release(blob);
+            quotaService.release(user, size);
+            intentRepository.close(operation);
+            throw e;
+        }
+        intentRepository.close(operation);
+    }
+
+    private void saveFile(String filename, Blob blob, long size, User user) {
+        File fileEntity = new File();
+        logger.debug("Storing file {} of {} bytes", filename, size);
+        fileEntity.setFilename(filename);
+        fileEntity.setSize(size);
+        fileEntity.setUser(user);
+        fileEntity.setBlob(blob);
+        fileRepository.save(fileEntity);
+    }
+
+    /**
+     * Copies the content into the blob store and saves the new name together with the blob, the
+     * old copy is deleted afterwards. If the save fails the file keeps its name and old copy.
+     */
+    private void renameLegacyFile(File file, String newName, User user) throws IOException {
+        String oldName = file.getFilename();
+        String oldKey = legacyKey(user, oldName);
+        UUID operation = UUID.randomUUID();
+        intentRepository.open(operation, null, null);
+        Blob blob;
+        try (InputStream in = storage.get(oldKey)) {
+            blob = blobStore.store(in, mediaType(newName, null), digest -> intentRepository.recordDigest(operation, digest));
+        }
+        file.setFilename(newName);
+        file.setBlob(blob);
+        try {
+            fileRepository.save(file);
+        } catch (RuntimeException e) {
+            file.setFilename(oldName);
+            file.setBlob(null);
+            blobStore.release(blob);
+            intentRepository.close(operation);
+            throw e;
+        }
+        intentRepository.close(operation);
+        storage.delete(oldKey);
+    }
+
+    @FunctionalInterface
+    private interface ContentWriter {
+        Blob write(Consumer<String> digestListener) throws IOException;
+    }
+
+    private static void checkBatchSize(int size) {
+        if (size > MAX_BATCH_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_BATCH_SIZE + " files per request");
+        }
+    }
+
+    private static String encodeCursor(FileSort sort, FileListItem last) {
+        String value = switch (sort) {
+            case NAME -> last.filename();
+            case SIZE -> String.valueOf(last.size());
+            case ID -> "";
+        };
+        String position = sort.name() + ":" + last.id() + ":" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor, FileSort sort) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = position.split(":", 3);
+            if (parts.length == 3 && parts[0].equals(sort.name())) {
+                return parts;
+            }
+        } catch (IllegalArgumentException e) {
+            // falls through to the error below
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+    }
+
+    /**
+     * Type of the uploaded content: what the client declared, unless that is missing or generic,
+     * then what the file extension suggests.
+     */
+    private static MediaType mediaType(String filename, String declared) {
+        if (declared != null) {
+            try {
+                MediaType mediaType = MediaType.parseMediaType(declared);
+                if (!mediaType.equalsTypeAndSubtype(MediaType.APPLICATION_OCTET_STREAM)) {
+                    return mediaType;
+                }
+            } catch (InvalidMediaTypeException e) {
+                // fall back to the file extension
+            }
+        }
+        return MediaTypeFactory.getMediaType(filename).orElse(null);
+    }
+
+    /**
+     * ILIKE pattern for the name, with the wildcards it contains escaped so they match literally.
+     */
+    private static String likePattern(String name, FileSearch.Match match) {
+        String value = name == null ? "" : name;
+        if (match == FileSearch.Match.EXTENSION && value.startsWith(".")) {
+            value = value.substring(1);
+        }
+        String escaped = value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return switch (match) {
+            case PREFIX -> escaped + "%";
+            case SUBSTRING -> "%" + escaped + "%";
+            case EXTENSION -> "%." + escaped;
+        };
+    }
+
+    private static String legacyKey(User user, String filename) {
+        return legacyKey(user.getId(), filename);
+    }
+
+    static String legacyKey(int userId, String filename) {
+        return userId + "/" + filename;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,47 @@
+package com.example.demo.services;
+
+import com.example.demo.config.TokenProperties;
+import com.example.demo.entities.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.UUID;
+
+/**
+ * Random tokens kept in process memory. Tokens are only valid on the instance that issued them.
+ */
+public class InMemoryTokenStore implements TokenStore {
+    private final Cache<String, User> activeTokens;
+
+    public InMemoryTokenStore(TokenProperties tokenProperties) {
+        this.activeTokens = Caffeine.newBuilder()
+                .expireAfterWrite(tokenProperties.ttl())
+                .expireAfterAccess(tokenProperties.idleTimeout())
+                .maximumSize(tokenProperties.maximumSize())
+                .build();
+    }
+
+    @Override
+    public String issue(User user) {
+        String token = UUID.randomUUID().toString();
+        activeTokens.put(token, user);
+        return token;
+    }
+
+    @Override
+    public User resolve(String token) {
+        return activeTokens.getIfPresent(token);
+    }
+
+    @Override
+    public User revoke(String token) {
+        return activeTokens.asMap().remove(token);
+    }
+
+    /**
+     * Approximate number of tokens held, expired ones may still be counted until they are cleaned up.
+     */
+    public long activeCount() {
+        return activeTokens.estimatedSize();
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.demo.services;
+
+import com.example.demo.entities.RevokedToken;
+import com.example.demo.repositories.RevokedTokenRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Revocation list shared through the revoked_token table. Every instance keeps a local copy that
+ * is refreshed incrementally in the background, so checking a token never waits for the database.
+ * A token logged out on another instance stays usable here for at most one refresh interval.
+ */
+public class JpaTokenRevocationStore implements TokenRevocationStore {
+    private static final Duration CLOCK_SKEW = Duration.ofSeconds(30);
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final Clock clock;
+    private final Map<String, Instant> revoked = new ConcurrentHashMap<>();
+    private volatile Instant lastRefresh = Instant.EPOCH;
+
+    public JpaTokenRevocationStore(RevokedTokenRepository revokedTokenRepository, Clock clock) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.clock = clock;
+    }
+
+    @Override
+    public void revoke(String tokenId, Instant expiresAt) {
+        RevokedToken revokedToken = new RevokedToken();
+        revokedToken.setTokenId(tokenId);
+        revokedToken.setExpiresAt(expiresAt);
+        revokedToken.setRevokedAt(clock.instant());
+        revokedTokenRepository.save(revokedToken);
+        revoked.put(tokenId, expiresAt);
+    }
+
+    @Override
+    public boolean isRevoked(String tokenId) {
+        return revoked.containsKey(tokenId);
+    }
+
+    @Scheduled(fixedDelay = 5000)
+    public void refresh() {
+        Instant now = clock.instant();
+        // overlap the window a little so rows committed by slower clocks are not missed
+        for (RevokedToken token : revokedTokenRepository.findByRevokedAtAfterAndExpiresAtAfter(lastRefresh.minus(CLOCK_SKEW), now)) {
+            revoked.put(token.getTokenId(), token.getExpiresAt());
+        }
+        lastRefresh = now;
+        revoked.values().removeIf(expiresAt -> expiresAt.isBefore(now));
+    }
+
+    @Scheduled(fixedDelay = 60 * 60 * 1000)
+    public void purgeExpired() {
+        revokedTokenRepository.deleteExpired(clock.instant());
+    }
+}
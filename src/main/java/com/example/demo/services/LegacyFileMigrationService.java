@@ -0,0 +1,135 @@
+package com.example.demo.services;
+
+import com.example.demo.config.LegacyMigrationProperties;
+import com.example.demo.dto.LegacyFile;
+import com.example.demo.entities.Blob;
+import com.example.demo.repositories.FileRepository;
+import com.example.demo.repositories.StorageIntentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Moves files that are still stored as &lt;userId&gt;/&lt;filename&gt; into the blob store, where
+ * content lives in hashed fan-out directories and renames only touch the database. Runs in the
+ * background once the application is ready; files that are not migrated yet keep being served
+ * from their old location.
+ * <p>
+ * Each file is stored as a blob first, then its row is pointed at the blob, then the old copy is
+ * deleted. An interruption leaves at most an unreferenced copy behind, never a row without content;
+ * a blob stored by an interrupted move is released by the {@link StorageReconciler}.
+ */
+@Service
+public class LegacyFileMigrationService {
+    private final FileRepository fileRepository;
+    private final BlobStore blobStore;
+    private final StorageBackend storage;
+    private final FileMetadataCache metadataCache;
+    private final LegacyMigrationProperties properties;
+    private final StorageIntentRepository intentRepository;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public LegacyFileMigrationService(FileRepository fileRepository, BlobStore blobStore, StorageBackend storage,
+                                      FileMetadataCache metadataCache, LegacyMigrationProperties properties,
+                                      StorageIntentRepository intentRepository) {
+        this.fileRepository = fileRepository;
+        this.blobStore = blobStore;
+        this.storage = storage;
+        this.metadataCache = metadataCache;
+        this.properties = properties;
+        this.intentRepository = intentRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startMigration() {
+        if (!properties.enabled()) {
+            return;
+        }
+        Thread.ofVirtual().name("legacy-file-migration").start(() -> {
+            try {
+                migrateFiles();
+            } catch (Exception e) {
+                logger.error("Legacy file migration failed", e);
+            }
+        });
+    }
+
+    /**
+     * Pages through the legacy files by id and moves each batch on a fixed number of threads.
+     * A file that cannot be moved is logged and skipped, it stays where it is until the next run.
+     *
+     * @return the number of files moved into the blob store
+     */
+    public int migrateFiles() throws InterruptedException, ExecutionException {
+        int migrated = 0;
+        try (ExecutorService executor = Executors.newFixedThreadPool(properties.threads())) {
+            int lastId = 0;
+            List<LegacyFile> batch;
+            do {
+                batch = fileRepository.findLegacyFiles(lastId, Limit.of(properties.batchSize()));
+                List<Future<Boolean>> moves = new ArrayList<>(batch.size());
+                for (LegacyFile file : batch) {
+                    moves.add(executor.submit(() -> migrate(file)));
+                }
+                for (Future<Boolean> move : moves) {
+                    if (move.get()) {
+                        migrated++;
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    lastId = batch.get(batch.size() - 1).id();
+                }
+            } while (batch.size() == properties.batchSize());
+        }
+        if (migrated > 0) {
+            logger.info("Moved {} legacy files into the blob store", migrated);
+        }
+        return migrated;
+    }
+
+    private boolean migrate(LegacyFile file) {
+        String key = FileService.legacyKey(file.userId(), file.filename());
+        UUID operation = UUID.randomUUID();
+        try {
+            intentRepository.open(operation, null, null);
+            Blob blob;
+            try (InputStream in = storage.get(key)) {
+                blob = blobStore.store(in, MediaTypeFactory.getMediaType(file.filename()).orElse(null),
+                        digest -> intentRepository.recordDigest(operation, digest));
+            }
+            if (fileRepository.attachBlob(file.id(), file.filename(), blob.getDigest()) == 0) {
+                // renamed or deleted while it was copied, the next run picks it up under its new name
+                blobStore.release(blob);
+                intentRepository.close(operation);
+                return false;
+            }
+            intentRepository.close(operation);
+            // other instances may still have the row without its blob cached, they reload it once the copy is gone
+            metadataCache.invalidate(file.userId(), file.filename());
+            storage.delete(key);
+            return true;
+        } catch (NoSuchFileException e) {
+            intentRepository.close(operation);
+            logger.warn("Content of legacy file {} is missing at {}", file.id(), key);
+            return false;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Error moving legacy file {} into the blob store", file.id(), e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.demo.services;
+
+import com.example.demo.config.StorageProperties;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Content in local directories, usually one per disk. Each key is assigned to a root by
+ * consistent hashing: every root owns a number of points on a ring and a key belongs to the first
+ * point at or after its hash. Adding a root takes over only the keys that now hash to its points.
+ * <p>
+ * A key that is not found on its root is looked up on the others, so content written before a root
+ * was added stays readable where it is. With a single root the layout is root/key.
+ * <p>
+ * Unless a spool directory is configured, spool files are spread across the roots by the same
+ * ring and kept in a .spool directory of each, next to the content they become.
+ */
+public class LocalStorageBackend implements StorageBackend {
+    private static final String SPOOL_DIRECTORY = ".spool";
+
+    private final List<Path> roots;
+    private final Path spoolDirectory;
+    private final NavigableMap<Long, Path> ring = new TreeMap<>();
+
+    public LocalStorageBackend(StorageProperties.Local properties) {
+        this(properties, null);
+    }
+
+    /**
+     * @param spoolDirectory one directory for all spool files, null to spool on the roots
+     */
+    public LocalStorageBackend(StorageProperties.Local properties, Path spoolDirectory) {
+        if (properties.roots().isEmpty()) {
+            throw new IllegalArgumentException("At least one storage root is required");
+        }
+        this.roots = properties.roots().stream().map(root -> root.toAbsolutePath().normalize()).toList();
+        this.spoolDirectory = spoolDirectory != null ? spoolDirectory.toAbsolutePath().normalize() : null;
+        for (Path root : roots) {
+            for (int i = 0; i < properties.virtualNodes(); i++) {
+                // points depend on the root only, so they do not move when other roots are added
+                ring.put(hash(root + "#" + i), root);
+            }
+        }
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length) throws IOException {
+        Path target = path(key);
+        Files.createDirectories(target.getParent());
+        Path tempFile = Files.createTempFile(target.getParent(), ".put-", ".tmp");
+        try {
+            Files.copy(content, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        Path target = path(key);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // the source is on another volume, copy it next to the target so it still appears at once
+            try (InputStream in = Files.newInputStream(source)) {
+                put(key, in, Files.size(source));
+            }
+            Files.delete(source);
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, Path source) throws IOException {
+        if (Files.exists(locate(key))) {
+            return false;
+        }
+        Path target = path(key);
+        Files.createDirectories(target.getParent());
+        try {
+            // unlike a move, a hard link fails if the target exists
+            Files.createLink(target, source);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (FileSystemException | UnsupportedOperationException e) {
+            // the source is on another volume, copy it next to the target and link that
+            Path tempFile = Files.createTempFile(target.getParent(), ".put-", ".tmp");
+            try {
+                Files.copy(source, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                Files.createLink(target, tempFile);
+                return true;
+            } catch (FileAlreadyExistsException exists) {
+                return false;
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return Files.newInputStream(locate(key));
+    }
+
+    @Override
+    public Resource resource(String key) {
+        return new FileSystemResource(locate(key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(locate(key));
+    }
+
+    /**
+     * Deletes the files concurrently, each on its own virtual thread.
+     */
+    @Override
+    public void deleteAll(Collection<String> keys) throws IOException {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Boolean>> deletions = keys.stream()
+                    .map(key -> executor.submit(() -> Files.deleteIfExists(locate(key))))
+                    .toList();
+            for (Future<Boolean> deletion : deletions) {
+                deletion.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while deleting files");
+        }
+    }
+
+    /**
+     * Moves the content to the root of the new key, a copy when that is another disk.
+     */
+    @Override
+    public void rename(String source, String target) throws IOException {
+        Path targetPath = path(target);
+        Files.createDirectories(targetPath.getParent());
+        Files.move(locate(source), targetPath);
+    }
+
+    @Override
+    public Path spoolFile(String name) {
+        Path directory = spoolDirectory != null ? spoolDirectory
+                : (roots.size() == 1 ? roots.get(0) : shard(name)).resolve(SPOOL_DIRECTORY);
+        return resolve(directory, name);
+    }
+
+    @Override
+    public List<Path> spoolDirectories() {
+        return spoolDirectory != null ? List.of(spoolDirectory)
+                : roots.stream().map(root -> root.resolve(SPOOL_DIRECTORY)).toList();
+    }
+
+    /**
+     * Where the key is written: on the root its hash is assigned to.
+     */
+    Path path(String key) {
+        return resolve(roots.size() == 1 ? roots.get(0) : shard(key), key);
+    }
+
+    private static Path resolve(Path directory, String key) {
+        Path path = directory.resolve(key).normalize();
+        if (!path.startsWith(directory) || path.equals(directory)) {
+            throw new IllegalArgumentException("Invalid storage key: " + key);
+        }
+        return path;
+    }
+
+    /**
+     * Where the key is read from: its own root, or another one that still has it.
+     */
+    private Path locate(String key) {
+        Path path = path(key);
+        if (roots.size() == 1 || Files.exists(path)) {
+            return path;
+        }
+        for (Path root : roots) {
+            Path candidate = root.resolve(key).normalize();
+            if (Files.exists(candidate)) {
+                return candidate;
+            }
+        }
+        return path;
+    }
+
+    private Path shard(String key) {
+        Map.Entry<Long, Path> point = ring.ceilingEntry(hash(key));
+        return (point != null ? point : ring.firstEntry()).getValue();
+    }
+
+    /**
+     * 64-bit FNV-1a with a final avalanche step, keys that share a long prefix still land far apart.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.demo.services;
+
+import com.example.demo.config.LoginProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps logins from taking the CPU that file transfers need. Attempts are rate limited per login
+ * name and per client address with token buckets, and password checks run on a small dedicated
+ * pool whose queue is bounded. Everything over a limit fails fast with 429.
+ */
+@Component
+public class LoginThrottle {
+    private static final int MAXIMUM_BUCKETS = 100_000;
+
+    private final LoginProperties loginProperties;
+    private final Ticker ticker;
+    private final Cache<String, TokenBucket> loginBuckets;
+    private final Cache<String, TokenBucket> addressBuckets;
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public LoginThrottle(LoginProperties loginProperties) {
+        this(loginProperties, Ticker.systemTicker());
+    }
+
+    public LoginThrottle(LoginProperties loginProperties, Ticker ticker) {
+        this.loginProperties = loginProperties;
+        this.ticker = ticker;
+        this.loginBuckets = buckets(loginProperties, ticker);
+        this.addressBuckets = buckets(loginProperties, ticker);
+        this.executor = new ThreadPoolExecutor(loginProperties.threads(), loginProperties.threads(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(loginProperties.queueSize()),
+                Thread.ofPlatform().name("login-hash-", 0).daemon().factory());
+    }
+
+    /**
+     * Takes one attempt from the budgets of the login name and the client address.
+     */
+    public void acquire(String login, String clientAddress) {
+        if (clientAddress != null
+                && !addressBuckets.get(clientAddress, key -> newBucket(loginProperties.attemptsPerAddress())).tryConsume()) {
+            throw tooManyAttempts();
+        }
+        if (!loginBuckets.get(login, key -> newBucket(loginProperties.attemptsPerLogin())).tryConsume()) {
+            throw tooManyAttempts();
+        }
+    }
+
+    /**
+     * Runs a password check on the login pool and waits for its result.
+     */
+    public <T> T verify(Callable<T> check) {
+        Future<T> result;
+        try {
+            result = executor.submit(check);
+        } catch (RejectedExecutionException e) {
+            throw tooManyAttempts();
+        }
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Login interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private TokenBucket newBucket(int capacity) {
+        return new TokenBucket(capacity, loginProperties.window().toNanos(), ticker);
+    }
+
+    private static Cache<String, TokenBucket> buckets(LoginProperties loginProperties, Ticker ticker) {
+        // an idle bucket has refilled completely after one window, dropping it then loses nothing
+        return Caffeine.newBuilder()
+                .expireAfterAccess(loginProperties.window())
+                .maximumSize(MAXIMUM_BUCKETS)
+                .ticker(ticker)
+                .build();
+    }
+
+    private static ResponseStatusException tooManyAttempts() {
+        return new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many login attempts");
+    }
+
+    /**
+     * Holds up to capacity tokens and refills them continuously, capacity tokens per period.
+     */
+    static final class TokenBucket {
+        private final int capacity;
+        private final double tokensPerNano;
+        private final Ticker ticker;
+        private double tokens;
+        private long refilledAt;
+
+        TokenBucket(int capacity, long periodNanos, Ticker ticker) {
+            this.capacity = capacity;
+            this.tokensPerNano = (double) capacity / periodNanos;
+            this.ticker = ticker;
+            this.tokens = capacity;
+            this.refilledAt = ticker.read();
+        }
+
+        synchronized boolean tryConsume() {
+            long now = ticker.read();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
@@ -2,33 +2,100 @@ package com.example.demo.services;
 
 import com.example.demo.entities.User;
 import com.example.demo.repositories.UserRepository;
-import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Hashes passwords that are still stored in plain text. Runs in the background once the
+ * application is ready, so startup does not wait for it, and users who log in before their
+ * row is reached are rehashed by {@link AuthService#login} instead.
+ */
 @Service
 public class PasswordMigrationService {
+    static final int PAGE_SIZE = 500;
+
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final JdbcTemplate jdbcTemplate;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
 
     @Autowired
-    public PasswordMigrationService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public PasswordMigrationService(UserRepository userRepository, PasswordEncoder passwordEncoder, JdbcTemplate jdbcTemplate) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Whether the password is a BCrypt hash, either a legacy one or one with the {bcrypt} id of the
+     * {@link org.springframework.security.crypto.password.DelegatingPasswordEncoder}. Other encoder
+     * ids are not registered, a password starting with some other {...} is plain text.
+     * {@link UserRepository#findUnencodedPasswords} applies the same rule.
+     */
+    public static boolean isEncoded(String password) {
+        String hash = password.startsWith("{bcrypt}") ? password.substring("{bcrypt}".length()) : password;
+        return hash.startsWith("$2a$") || hash.startsWith("$2b$") || hash.startsWith("$2y$");
     }
 
-    @PostConstruct
-    public void migratePasswords() {
-        List<User> users = userRepository.findAll();
-        for (User user : users) {
-            if (!user.getPassword().startsWith("$2a$")) {
-                String hashedPassword = passwordEncoder.encode(user.getPassword());
-                user.setPassword(hashedPassword);
-                userRepository.save(user);
+    @EventListener(ApplicationReadyEvent.class)
+    public void startMigration() {
+        Thread.ofVirtual().name("password-migration").start(() -> {
+            try {
+                migratePasswords();
+            } catch (Exception e) {
+                logger.error("Password migration failed", e);
             }
+        });
+    }
+
+    /**
+     * Pages through the users with plain text passwords by id, hashes each page on half of the
+     * cores and writes it back in one JDBC batch. A row is only updated if its password did not
+     * change in the meantime, e.g. by a rehash on login.
+     *
+     * @return the number of passwords hashed
+     */
+    public int migratePasswords() throws InterruptedException, ExecutionException {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int migrated = 0;
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            int lastId = 0;
+            List<User> page;
+            do {
+                page = userRepository.findUnencodedPasswords(lastId, Limit.of(PAGE_SIZE));
+                List<Future<String>> hashes = new ArrayList<>(page.size());
+                for (User user : page) {
+                    hashes.add(executor.submit(() -> passwordEncoder.encode(user.getPassword())));
+                }
+                List<Object[]> updates = new ArrayList<>(page.size());
+                for (int i = 0; i < page.size(); i++) {
+                    User user = page.get(i);
+                    updates.add(new Object[]{hashes.get(i).get(), user.getId(), user.getPassword()});
+                }
+                if (!updates.isEmpty()) {
+                    jdbcTemplate.batchUpdate("update users set password = ? where id = ? and password = ?", updates);
+                    migrated += updates.size();
+                    lastId = page.get(page.size() - 1).getId();
+                }
+            } while (page.size() == PAGE_SIZE);
+        }
+        if (migrated > 0) {
+            logger.info("Hashed {} plain text passwords", migrated);
         }
+        return migrated;
     }
-}
\ No newline at end of file
+}
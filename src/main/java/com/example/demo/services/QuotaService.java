@@ -0,0 +1,63 @@
+package com.example.demo.services;
+
+import com.example.demo.config.QuotaProperties;
+import com.example.demo.dto.StorageUsage;
+import com.example.demo.entities.User;
+import com.example.demo.repositories.UserRepository;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Keeps each user's storage usage as a counter on the users row. Uploads reserve their size with a
+ * conditional update before anything is written, deletes give it back, so usage is never summed
+ * over the user's files.
+ */
+@Service
+public class QuotaService {
+    private final UserRepository userRepository;
+    private final QuotaProperties quotaProperties;
+
+    public QuotaService(UserRepository userRepository, QuotaProperties quotaProperties) {
+        this.userRepository = userRepository;
+        this.quotaProperties = quotaProperties;
+    }
+
+    /**
+     * Counts the bytes against the user's quota, fails with 413 if they do not fit.
+     */
+    public void reserve(User user, long bytes) {
+        if (userRepository.reserveBytes(user.getId(), bytes, defaultLimit()) == 0) {
+            throw quotaExceeded();
+        }
+    }
+
+    public void release(User user, long bytes) {
+        if (bytes > 0) {
+            userRepository.releaseBytes(user.getId(), bytes);
+        }
+    }
+
+    /**
+     * Fails with 413 if the bytes do not fit right now. Reserves nothing, it only rejects hopeless uploads early.
+     */
+    public void checkAvailable(User user, long bytes) {
+        StorageUsage usage = usage(user);
+        if (usage.getUsed() + bytes > usage.getQuota()) {
+            throw quotaExceeded();
+        }
+    }
+
+    public StorageUsage usage(User user) {
+        return userRepository.findUsage(user.getId(), defaultLimit())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid token"));
+    }
+
+    private long defaultLimit() {
+        return quotaProperties.defaultLimit().toBytes();
+    }
+
+    private static ResponseStatusException quotaExceeded() {
+        return new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Storage quota exceeded");
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.demo.services;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.DescriptiveResource;
+import org.springframework.core.io.Resource;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Content as objects of one bucket in an S3-compatible store, the key is used as the object key.
+ * SDK failures surface as {@link IOException}s like disk errors do with the local backend.
+ */
+public class S3StorageBackend implements StorageBackend {
+    // most keys one DeleteObjects request accepts
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final S3Client s3;
+    private final String bucket;
+    private final Path spoolDirectory;
+
+    public S3StorageBackend(S3Client s3, String bucket) {
+        this(s3, bucket, null);
+    }
+
+    /**
+     * @param spoolDirectory local directory uploads are written to before they are put, null for
+     *                       one in the system temp directory
+     */
+    public S3StorageBackend(S3Client s3, String bucket, Path spoolDirectory) {
+        if (bucket == null || bucket.isBlank()) {
+            throw new IllegalArgumentException("storage.backend.s3.bucket is required");
+        }
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.spoolDirectory = (spoolDirectory != null ? spoolDirectory
+                : Path.of(System.getProperty("java.io.tmpdir"), "storage-spool")).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length) throws IOException {
+        try {
+            s3.putObject(request -> request.bucket(bucket).key(key).contentLength(length),
+                    RequestBody.fromInputStream(content, length));
+        } catch (SdkException e) {
+            throw failure("put", key, e);
+        }
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        long length = Files.size(source);
+        try {
+            // a file body can be read again when the SDK retries, a stream body cannot
+            s3.putObject(request -> request.bucket(bucket).key(key).contentLength(length),
+                    RequestBody.fromFile(source));
+        } catch (SdkException e) {
+            throw failure("put", key, e);
+        }
+        Files.delete(source);
+    }
+
+    /**
+     * A conditional put (If-None-Match: *), the store refuses it if the object exists.
+     */
+    @Override
+    public boolean putIfAbsent(String key, Path source) throws IOException {
+        long length = Files.size(source);
+        try {
+            s3.putObject(request -> request.bucket(bucket).key(key).contentLength(length).ifNoneMatch("*"),
+                    RequestBody.fromFile(source));
+            return true;
+        } catch (S3Exception e) {
+            // 412: the object exists, 409: a concurrent conditional write of it is in progress
+            if (e.statusCode() == 412 || e.statusCode() == 409) {
+                return false;
+            }
+            throw failure("put", key, e);
+        } catch (SdkException e) {
+            throw failure("put", key, e);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        try {
+            return s3.getObject(request -> request.bucket(bucket).key(key));
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(key);
+        } catch (SdkException e) {
+            throw failure("get", key, e);
+        }
+    }
+
+    @Override
+    public Resource resource(String key) throws IOException {
+        try {
+            HeadObjectResponse head = s3.headObject(request -> request.bucket(bucket).key(key));
+            return new ObjectResource(key, head);
+        } catch (NoSuchKeyException e) {
+            return new DescriptiveResource("S3 object " + key);
+        } catch (SdkException e) {
+            throw failure("head", key, e);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3.deleteObject(request -> request.bucket(bucket).key(key));
+        } catch (SdkException e) {
+            throw failure("delete", key, e);
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys) throws IOException {
+        List<ObjectIdentifier> objects = keys.stream().distinct()
+                .map(key -> ObjectIdentifier.builder().key(key).build())
+                .toList();
+        for (int from = 0; from < objects.size(); from += DELETE_BATCH_SIZE) {
+            List<ObjectIdentifier> batch = objects.subList(from, Math.min(from + DELETE_BATCH_SIZE, objects.size()));
+            DeleteObjectsResponse response;
+            try {
+                response = s3.deleteObjects(request -> request.bucket(bucket)
+                        .delete(delete -> delete.objects(batch).quiet(true)));
+            } catch (SdkException e) {
+                throw failure("delete", batch.size() + " keys", e);
+            }
+            if (response.hasErrors() && !response.errors().isEmpty()) {
+                S3Error error = response.errors().get(0);
+                throw new IOException("Error deleting " + response.errors().size() + " S3 objects, "
+                        + error.key() + ": " + error.code() + " " + error.message());
+            }
+        }
+    }
+
+    /**
+     * Copies the object within the bucket and deletes the source, object stores cannot rename.
+     */
+    @Override
+    public void rename(String source, String target) throws IOException {
+        try {
+            s3.copyObject(request -> request.sourceBucket(bucket).sourceKey(source)
+                    .destinationBucket(bucket).destinationKey(target));
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(source);
+        } catch (SdkException e) {
+            throw failure("copy", source, e);
+        }
+        delete(source);
+    }
+
+    @Override
+    public Path spoolFile(String name) {
+        Path path = spoolDirectory.resolve(name).normalize();
+        if (!path.startsWith(spoolDirectory) || path.equals(spoolDirectory)) {
+            throw new IllegalArgumentException("Invalid spool file: " + name);
+        }
+        return path;
+    }
+
+    @Override
+    public List<Path> spoolDirectories() {
+        return List.of(spoolDirectory);
+    }
+
+    private static IOException failure(String operation, String key, SdkException e) {
+        return new IOException("S3 " + operation + " of " + key + " failed: " + e.getMessage(), e);
+    }
+
+    private final class ObjectResource extends AbstractResource {
+        private final String key;
+        private final HeadObjectResponse head;
+
+        private ObjectResource(String key, HeadObjectResponse head) {
+            this.key = key;
+            this.head = head;
+        }
+
+        @Override
+        public String getDescription() {
+            return "S3 object " + key + " in bucket " + bucket;
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public long contentLength() {
+            return head.contentLength();
+        }
+
+        @Override
+        public long lastModified() {
+            return head.lastModified().toEpochMilli();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return get(key);
+        }
+    }
+}
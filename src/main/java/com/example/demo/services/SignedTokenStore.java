@@ -0,0 +1,114 @@
+package com.example.demo.services;
+
+import com.example.demo.config.TokenProperties;
+import com.example.demo.entities.User;
+import com.example.demo.repositories.UserRepository;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Self-contained tokens of the form {@code base64url(payload).base64url(hmac)} with the payload
+ * {@code userId:expiresAtEpochSecond:tokenId}. Any instance sharing the secret verifies them with a
+ * constant-time signature check, only logged out tokens are looked up in the revocation store.
+ * The user of a token is a lazy reference by id, resolving it does not query the users table.
+ */
+public class SignedTokenStore implements TokenStore {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final Mac prototype;
+    private final TokenProperties tokenProperties;
+    private final TokenRevocationStore revocationStore;
+    private final UserRepository userRepository;
+    private final Clock clock;
+
+    public SignedTokenStore(TokenProperties tokenProperties, TokenRevocationStore revocationStore,
+                            UserRepository userRepository, Clock clock) {
+        if (tokenProperties.secret() == null || tokenProperties.secret().getBytes(StandardCharsets.UTF_8).length < 32) {
+            throw new IllegalStateException("auth.token.secret must be at least 32 bytes in signed token mode");
+        }
+        try {
+            prototype = Mac.getInstance(ALGORITHM);
+            prototype.init(new SecretKeySpec(tokenProperties.secret().getBytes(StandardCharsets.UTF_8), ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+        this.tokenProperties = tokenProperties;
+        this.revocationStore = revocationStore;
+        this.userRepository = userRepository;
+        this.clock = clock;
+    }
+
+    @Override
+    public String issue(User user) {
+        long expiresAt = clock.instant().plus(tokenProperties.ttl()).getEpochSecond();
+        String payload = user.getId() + ":" + expiresAt + ":" + UUID.randomUUID();
+        String encodedPayload = ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        return encodedPayload + "." + ENCODER.encodeToString(sign(encodedPayload));
+    }
+
+    @Override
+    public User resolve(String token) {
+        Claims claims = verify(token);
+        if (claims == null || revocationStore.isRevoked(claims.tokenId())) {
+            return null;
+        }
+        return userRepository.getReferenceById(claims.userId());
+    }
+
+    @Override
+    public User revoke(String token) {
+        Claims claims = verify(token);
+        if (claims == null || revocationStore.isRevoked(claims.tokenId())) {
+            return null;
+        }
+        revocationStore.revoke(claims.tokenId(), claims.expiresAt());
+        return userRepository.getReferenceById(claims.userId());
+    }
+
+    private Claims verify(String token) {
+        int separator = token.lastIndexOf('.');
+        if (separator <= 0) {
+            return null;
+        }
+        String encodedPayload = token.substring(0, separator);
+        try {
+            byte[] signature = DECODER.decode(token.substring(separator + 1));
+            if (!MessageDigest.isEqual(sign(encodedPayload), signature)) {
+                return null;
+            }
+            String[] parts = new String(DECODER.decode(encodedPayload), StandardCharsets.UTF_8).split(":");
+            if (parts.length != 3) {
+                return null;
+            }
+            Instant expiresAt = Instant.ofEpochSecond(Long.parseLong(parts[1]));
+            if (!clock.instant().isBefore(expiresAt)) {
+                return null;
+            }
+            return new Claims(Integer.parseInt(parts[0]), expiresAt, parts[2]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private byte[] sign(String encodedPayload) {
+        try {
+            Mac mac = (Mac) prototype.clone();
+            return mac.doFinal(encodedPayload.getBytes(StandardCharsets.US_ASCII));
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("HMAC-SHA256 cannot be cloned", e);
+        }
+    }
+
+    private record Claims(int userId, Instant expiresAt, String tokenId) {
+    }
+}
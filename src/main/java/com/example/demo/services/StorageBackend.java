@@ -0,0 +1,68 @@
+package com.example.demo.services;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Where stored content lives. Content is addressed by a relative, slash-separated key such as
+ * {@code blobs/ab/cd/<digest>}; the backend decides which disk or bucket holds it. Reading a key
+ * that does not exist fails with {@link java.nio.file.NoSuchFileException}, deleting one is a no-op.
+ */
+public interface StorageBackend {
+
+    /**
+     * Stores the content under the key, replacing what was there. The stream is read to its end
+     * but not closed.
+     */
+    void put(String key, InputStream content, long length) throws IOException;
+
+    /**
+     * Stores a local file under the key and removes the source. A backend on the same volume
+     * moves it into place atomically instead of copying it.
+     */
+    void put(String key, Path source) throws IOException;
+
+    /**
+     * Stores a copy of the local file under the key unless the key exists, atomically with respect
+     * to other writers of the key. The source is left in place.
+     *
+     * @return false if the key existed, nothing was written then
+     */
+    boolean putIfAbsent(String key, Path source) throws IOException;
+
+    InputStream get(String key) throws IOException;
+
+    /**
+     * The content for serving it: length and modification time without reading it, and the local
+     * file when there is one, so it can be sent with sendfile. Does not exist when the key is missing.
+     */
+    Resource resource(String key) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    /**
+     * Deletes the keys with as few round trips as the backend allows.
+     */
+    void deleteAll(Collection<String> keys) throws IOException;
+
+    void rename(String source, String target) throws IOException;
+
+    /**
+     * Where to write content whose key is not known yet, such as uploads that are addressed by their
+     * digest, before it is handed to {@link #put(String, Path)}. The same name always maps to the same
+     * file. Parent directories are not created.
+     *
+     * @param name relative, slash-separated path within the spool
+     */
+    Path spoolFile(String name);
+
+    /**
+     * The directories {@link #spoolFile} spreads files across.
+     */
+    List<Path> spoolDirectories();
+}
@@ -0,0 +1,116 @@
+package com.example.demo.services;
+
+import com.example.demo.config.JournalProperties;
+import com.example.demo.entities.StorageIntent;
+import com.example.demo.repositories.StorageIntentRepository;
+import com.example.demo.repositories.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finishes storage operations that were interrupted between the disk and the database. Every
+ * upload, delete and legacy move leaves an entry in the storage_intent journal until it is done,
+ * so an entry older than the grace period marks the only blobs and users that can be out of line.
+ * Only those are repaired: the blob's reference count is recounted from the file table, content
+ * nothing refers to is deleted, and the user's usage is summed from their files. The work is
+ * proportional to the number of interrupted operations, not to the size of the storage.
+ */
+@Service
+public class StorageReconciler {
+    private final StorageIntentRepository intentRepository;
+    private final UserRepository userRepository;
+    private final BlobStore blobStore;
+    private final JournalProperties properties;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public StorageReconciler(StorageIntentRepository intentRepository, UserRepository userRepository,
+                             BlobStore blobStore, JournalProperties properties) {
+        this.intentRepository = intentRepository;
+        this.userRepository = userRepository;
+        this.blobStore = blobStore;
+        this.properties = properties;
+    }
+
+    @Scheduled(fixedDelay = 60 * 1000)
+    public void reconcileScheduled() {
+        try {
+            int repaired = reconcile();
+            if (repaired > 0) {
+                logger.info("Repaired {} interrupted storage operations", repaired);
+            }
+        } catch (Exception e) {
+            logger.error("Storage reconciliation failed", e);
+        }
+    }
+
+    /**
+     * Repairs the stale journal entries batch by batch and removes them. An entry whose blob could
+     * not be repaired, because an operation on it is still running or deleting the content failed,
+     * is kept for the next run.
+     *
+     * @return the number of journal entries removed
+     */
+    public int reconcile() throws IOException {
+        Instant since = Instant.now().minus(properties.gracePeriod());
+        int repaired = 0;
+        List<StorageIntent> batch;
+        do {
+            batch = intentRepository.findStale(since, Limit.of(properties.batchSize()));
+            Set<String> digests = new LinkedHashSet<>();
+            Set<Integer> userIds = new LinkedHashSet<>();
+            for (StorageIntent intent : batch) {
+                if (intent.getDigest() != null) {
+                    digests.add(intent.getDigest());
+                }
+                if (intent.getUserId() != null) {
+                    userIds.add(intent.getUserId());
+                }
+            }
+
+            Set<String> skipped = new HashSet<>();
+            for (String digest : digests) {
+                try {
+                    if (!blobStore.reconcile(digest,
+                            () -> intentRepository.existsByDigestAndCreatedAtGreaterThanEqual(digest, since))) {
+                        skipped.add(digest);
+                    }
+                } catch (IOException e) {
+                    logger.warn("Error deleting unreferenced blob {}", digest, e);
+                    skipped.add(digest);
+                }
+            }
+            // skipped when an operation of the user started since, that operation's own entry covers it
+            userIds.forEach(userId -> userRepository.recountUsedBytes(userId, since));
+
+            List<Long> done = new ArrayList<>(batch.size());
+            for (StorageIntent intent : batch) {
+                if (intent.getDigest() == null || !skipped.contains(intent.getDigest())) {
+                    done.add(intent.getId());
+                }
+            }
+            intentRepository.deleteAllByIdInBatch(done);
+            repaired += done.size();
+            if (done.isEmpty()) {
+                // every entry of the batch is waiting for a running operation, the next run retries
+                break;
+            }
+        } while (batch.size() == properties.batchSize());
+
+        int purged = blobStore.purgeTempFiles(since);
+        if (purged > 0) {
+            logger.info("Deleted {} abandoned upload temp files", purged);
+        }
+        return repaired;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.demo.services;
+
+import java.time.Instant;
+
+/**
+ * Remembers logged out signed tokens until they would have expired anyway.
+ */
+public interface TokenRevocationStore {
+    void revoke(String tokenId, Instant expiresAt);
+
+    boolean isRevoked(String tokenId);
+}
@@ -0,0 +1,20 @@
+package com.example.demo.services;
+
+import com.example.demo.entities.User;
+
+/**
+ * Issues auth tokens and resolves them back to their user.
+ */
+public interface TokenStore {
+    String issue(User user);
+
+    /**
+     * Returns the user of a valid token, or null if the token is unknown, expired or revoked.
+     */
+    User resolve(String token);
+
+    /**
+     * Invalidates the token and returns the user it belonged to, or null if it was not valid.
+     */
+    User revoke(String token);
+}
@@ -0,0 +1,134 @@
+package com.example.demo.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Meters of the content moving in and out of the store. Upload durations cover storing the
+ * content (hashing, compressing, writing the blob), the network part of a request shows in
+ * http.server.requests. Download durations cover writing the body to the client, see
+ * {@link #timeDownload}. Sendfile transfers finish after the request has left the application
+ * and Range responses are written region by region, so those only record their size.
+ */
+@Component
+public class TransferMetrics {
+    private static final List<String> DOWNLOAD_MODES = List.of("sendfile", "stream", "cache", "range", "decompressed");
+
+    private final DistributionSummary uploadSize;
+    private final Timer uploadDuration;
+    private final DistributionSummary uploadThroughput;
+    private final Map<String, DistributionSummary> downloadSizes = new HashMap<>();
+    private final Map<String, Timer> downloadDurations = new HashMap<>();
+    private final Map<String, DistributionSummary> downloadThroughputs = new HashMap<>();
+    private final MeterRegistry registry;
+
+    public TransferMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.uploadSize = DistributionSummary.builder("storage.upload.size")
+                .baseUnit(BaseUnits.BYTES)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.uploadDuration = Timer.builder("storage.upload.duration")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.uploadThroughput = DistributionSummary.builder("storage.upload.throughput")
+                .baseUnit("bytes.per.second")
+                .publishPercentileHistogram()
+                .register(registry);
+        for (String mode : DOWNLOAD_MODES) {
+            downloadSizes.put(mode, DistributionSummary.builder("storage.download.size")
+                    .baseUnit(BaseUnits.BYTES)
+                    .tag("mode", mode)
+                    .publishPercentileHistogram()
+                    .register(registry));
+            downloadDurations.put(mode, Timer.builder("storage.download.duration")
+                    .tag("mode", mode)
+                    .publishPercentileHistogram()
+                    .register(registry));
+            downloadThroughputs.put(mode, DistributionSummary.builder("storage.download.throughput")
+                    .baseUnit("bytes.per.second")
+                    .tag("mode", mode)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+    }
+
+    public void recordUpload(long bytes, Duration duration) {
+        uploadSize.record(bytes);
+        uploadDuration.record(duration);
+        if (!duration.isZero()) {
+            uploadThroughput.record(bytes * 1e9 / duration.toNanos());
+        }
+    }
+
+    /**
+     * @param mode how the content is sent: sendfile, stream, cache (from memory), range or decompressed
+     */
+    public void recordDownload(long bytes, String mode) {
+        meter(downloadSizes, mode).record(bytes);
+    }
+
+    /**
+     * Times the body of a download. When the returned stream is closed, which the message converter
+     * does once the body is written, the time since this call goes to storage.download.duration and
+     * the bytes read per second to storage.download.throughput.
+     */
+    public InputStream timeDownload(InputStream content, String mode) {
+        Timer duration = meter(downloadDurations, mode);
+        DistributionSummary throughput = meter(downloadThroughputs, mode);
+        Timer.Sample sample = Timer.start(registry);
+        return new FilterInputStream(content) {
+            private long bytes;
+            private boolean closed;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytes++;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    bytes += n;
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    long nanos = sample.stop(duration);
+                    if (nanos > 0) {
+                        throughput.record(bytes * 1e9 / nanos);
+                    }
+                }
+                super.close();
+            }
+        };
+    }
+
+    private static <T> T meter(Map<String, T> meters, String mode) {
+        T meter = meters.get(mode);
+        if (meter == null) {
+            throw new IllegalArgumentException("Unknown download mode: " + mode);
+        }
+        return meter;
+    }
+}
@@ -0,0 +1,62 @@
+-- Schema as previously generated by Hibernate, written idempotently so that it also applies
+-- on top of a database that was created by ddl-auto.
+
+create table if not exists users (
+    id       integer generated by default as identity primary key,
+    login    varchar(255),
+    password varchar(255)
+);
+
+create table if not exists blob (
+    digest    varchar(64) primary key,
+    size      bigint not null,
+    ref_count bigint not null
+);
+
+create table if not exists file (
+    id          integer generated by default as identity primary key,
+    filename    varchar(255) not null,
+    size        bigint not null,
+    created_at  timestamp(6) with time zone,
+    updated_at  timestamp(6) with time zone,
+    user_id     integer not null references users (id),
+    blob_digest varchar(64) references blob (digest)
+);
+
+alter table file add column if not exists created_at timestamp(6) with time zone;
+alter table file add column if not exists updated_at timestamp(6) with time zone;
+alter table file add column if not exists blob_digest varchar(64) references blob (digest);
+
+create table if not exists upload_session (
+    id         varchar(255) primary key,
+    filename   varchar(255) not null,
+    size       bigint not null,
+    part_size  bigint not null,
+    created_at timestamp(6) with time zone not null,
+    user_id    integer not null references users (id)
+);
+
+create table if not exists upload_part (
+    id          integer generated by default as identity primary key,
+    session_id  varchar(255) not null references upload_session (id),
+    part_number integer not null
+);
+
+create table if not exists revoked_token (
+    token_id   varchar(36) primary key,
+    expires_at timestamp(6) with time zone not null,
+    revoked_at timestamp(6) with time zone not null
+);
+
+-- findByLogin runs on every login
+create unique index if not exists users_login_key on users (login);
+
+-- Leading with user_id serves the per-user lookups as well as the keyset pages of /list
+create unique index if not exists file_user_id_filename_key on file (user_id, filename);
+create index if not exists file_user_id_id_idx on file (user_id, id);
+create index if not exists file_user_id_size_id_idx on file (user_id, size, id);
+create index if not exists file_blob_digest_idx on file (blob_digest);
+
+create unique index if not exists upload_part_session_id_part_number_key on upload_part (session_id, part_number);
+create index if not exists upload_session_created_at_idx on upload_session (created_at);
+create index if not exists revoked_token_revoked_at_idx on revoked_token (revoked_at);
@@ -0,0 +1,5 @@
+-- Blobs may be stored compressed, size stays the size of the original content
+alter table blob add column codec varchar(16) not null default 'IDENTITY';
+alter table blob add column stored_size bigint;
+update blob set stored_size = size;
+alter table blob alter column stored_size set not null;
@@ -0,0 +1,7 @@
+-- Storage used by each user is kept up to date on upload and delete instead of summed on demand
+alter table users add column used_bytes bigint not null default 0;
+-- null means the default limit from storage.quota.default-limit
+alter table users add column quota_bytes bigint;
+update users u set used_bytes = f.total
+from (select user_id, sum(size) as total from file group by user_id) f
+where f.user_id = u.id;
@@ -0,0 +1,15 @@
+-- Write-ahead journal of storage operations: a row is written before content, blob reference counts
+-- or quota usage change and removed once the file row agrees with them. Rows that outlive the grace
+-- period belong to operations that were interrupted and are repaired by the reconciler.
+create table storage_intent (
+    id         bigint generated by default as identity primary key,
+    operation  uuid not null,
+    user_id    integer,
+    digest     varchar(64),
+    created_at timestamp(6) with time zone not null default now()
+);
+
+create index storage_intent_operation_idx on storage_intent (operation);
+create index storage_intent_digest_idx on storage_intent (digest);
+create index storage_intent_user_id_idx on storage_intent (user_id);
+create index storage_intent_created_at_idx on storage_intent (created_at);
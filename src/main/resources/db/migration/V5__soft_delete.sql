@@ -0,0 +1,12 @@
+-- Deleting a file only sets deleted_at, the row and its content are removed in the background
+-- once the undelete window is over.
+alter table file add column deleted_at timestamp(6) with time zone;
+
+-- a deleted name can be taken again while the old row waits to be purged;
+-- databases created by ddl-auto have this as a constraint, the others as a plain unique index
+alter table file drop constraint if exists file_user_id_filename_key;
+drop index if exists file_user_id_filename_key;
+create unique index file_user_id_filename_key on file (user_id, filename) where deleted_at is null;
+
+-- only holds the deletion queue, it stays small however many files there are
+create index file_deleted_at_idx on file (deleted_at) where deleted_at is not null;
@@ -0,0 +1,8 @@
+-- Name search matches with ILIKE anywhere in the filename. A trigram index answers those
+-- within one user's files; btree_gin lets user_id be part of the same GIN index.
+-- Both extensions are trusted, the database owner can create them.
+create extension if not exists pg_trgm;
+create extension if not exists btree_gin;
+
+create index file_user_id_filename_trgm_idx on file using gin (user_id, filename gin_trgm_ops)
+    where deleted_at is null;
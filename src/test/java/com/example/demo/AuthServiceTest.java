@@ -1,27 +1,36 @@
 package com.example.demo;
 
+import com.example.demo.config.LoginProperties;
+import com.example.demo.config.TokenProperties;
 import com.example.demo.entities.User;
 import com.example.demo.repositories.UserRepository;
 import com.example.demo.services.AuthService;
+import com.example.demo.services.InMemoryTokenStore;
+import com.example.demo.services.LoginThrottle;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @Nested
 @ExtendWith(MockitoExtension.class)
 class AuthServiceTest {
+    private static final String CLIENT_ADDRESS = "127.0.0.1";
 
     @Mock
     private UserRepository userRepository;
@@ -29,9 +38,22 @@ class AuthServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
-    @InjectMocks
     private AuthService authService;
 
+    private SimpleMeterRegistry meterRegistry;
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        TokenProperties tokenProperties = new TokenProperties(TokenProperties.Mode.OPAQUE, null,
+                Duration.ofHours(12), Duration.ofMinutes(30), 1000);
+        meterRegistry = new SimpleMeterRegistry();
+        LoginProperties loginProperties = new LoginProperties(2, 64, 4, 3, 30, Duration.ofMinutes(1));
+        authService = new AuthService(userRepository, passwordEncoder, new InMemoryTokenStore(tokenProperties),
+                new LoginThrottle(loginProperties, nanoTime::get), meterRegistry);
+    }
+
     @Test
     void login_ValidCredentials_ReturnsToken() {
         String username = "user1";
@@ -50,9 +72,25 @@ class AuthServiceTest {
         Mockito.when(passwordEncoder.matches(rawPassword, encodedPassword))
                 .thenReturn(true);
 
-        String token = authService.login(username, rawPassword);
+        String token = authService.login(username, rawPassword, CLIENT_ADDRESS);
 
         Assertions.assertNotNull(token);
+        Assertions.assertSame(user, authService.findUser(token));
+    }
+
+    @Test
+    void findUser_AfterLogout_ReturnsNull() {
+        User user = new User();
+        user.setLogin("user1");
+        user.setPassword("$2a$10$encoded");
+        Mockito.when(userRepository.findByLogin("user1")).thenReturn(Optional.of(user));
+        Mockito.when(passwordEncoder.matches("password", "$2a$10$encoded")).thenReturn(true);
+
+        String token = authService.login("user1", "password", CLIENT_ADDRESS);
+        Assertions.assertSame(user, authService.logout(token));
+
+        Assertions.assertNull(authService.findUser(token));
+        Assertions.assertNull(authService.findUser("unknown-token"));
     }
 
     @Test
@@ -65,6 +103,75 @@ class AuthServiceTest {
 
         Mockito.when(userRepository.findByLogin(username))
                 .thenReturn(Optional.of(user));
-        assertThrows(ResponseStatusException.class, () -> authService.login(username, password));
+        assertThrows(ResponseStatusException.class, () -> authService.login(username, password, CLIENT_ADDRESS));
+    }
+
+    @Test
+    void login_RecordsLatencyByOutcome() {
+        User user = new User();
+        user.setLogin("user1");
+        user.setPassword("$2a$10$encoded");
+        Mockito.when(userRepository.findByLogin("user1")).thenReturn(Optional.of(user));
+        Mockito.when(passwordEncoder.matches("password", "$2a$10$encoded")).thenReturn(true);
+
+        authService.login("user1", "password", CLIENT_ADDRESS);
+        assertThrows(ResponseStatusException.class, () -> authService.login("user1", "wrong", CLIENT_ADDRESS));
+
+        Assertions.assertEquals(1, meterRegistry.get("auth.login").tag("outcome", "success").timer().count());
+        Assertions.assertEquals(1, meterRegistry.get("auth.login").tag("outcome", "failure").timer().count());
+    }
+
+    @Test
+    void login_PlainTextPassword_IsRehashedOnSuccess() {
+        User user = new User();
+        user.setId(5);
+        user.setLogin("legacy");
+        user.setPassword("secret");
+        Mockito.when(userRepository.findByLogin("legacy")).thenReturn(Optional.of(user));
+        Mockito.when(passwordEncoder.encode("secret")).thenReturn("$2a$10$hashed");
+        Mockito.when(userRepository.updatePassword(5, "$2a$10$hashed", "secret")).thenReturn(1);
+
+        Assertions.assertNotNull(authService.login("legacy", "secret", CLIENT_ADDRESS));
+
+        Assertions.assertEquals("$2a$10$hashed", user.getPassword());
+        assertThrows(ResponseStatusException.class, () -> authService.login("legacy", "wrong", CLIENT_ADDRESS));
+    }
+
+    @Test
+    void login_TooManyAttemptsForOneLogin_AreRejectedUntilTheBudgetRefills() {
+        User user = new User();
+        user.setLogin("user1");
+        user.setPassword("$2a$10$encoded");
+        Mockito.when(userRepository.findByLogin("user1")).thenReturn(Optional.of(user));
+
+        for (int i = 0; i < 3; i++) {
+            ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                    () -> authService.login("user1", "wrong", CLIENT_ADDRESS));
+            Assertions.assertEquals(HttpStatus.UNAUTHORIZED, exception.getStatusCode());
+        }
+        ResponseStatusException throttled = assertThrows(ResponseStatusException.class,
+                () -> authService.login("user1", "wrong", CLIENT_ADDRESS));
+        Assertions.assertEquals(HttpStatus.TOO_MANY_REQUESTS, throttled.getStatusCode());
+
+        nanoTime.addAndGet(Duration.ofSeconds(20).toNanos());
+        Mockito.when(passwordEncoder.matches("password", "$2a$10$encoded")).thenReturn(true);
+        Assertions.assertNotNull(authService.login("user1", "password", CLIENT_ADDRESS));
+    }
+
+    @Test
+    void login_HashBelowTargetCost_IsUpgradedOnSuccess() {
+        User user = new User();
+        user.setId(9);
+        user.setLogin("user1");
+        user.setPassword("$2a$04$weak");
+        Mockito.when(userRepository.findByLogin("user1")).thenReturn(Optional.of(user));
+        Mockito.when(passwordEncoder.matches("password", "$2a$04$weak")).thenReturn(true);
+        Mockito.when(passwordEncoder.upgradeEncoding("$2a$04$weak")).thenReturn(true);
+        Mockito.when(passwordEncoder.encode("password")).thenReturn("{bcrypt}$2a$10$strong");
+        Mockito.when(userRepository.updatePassword(9, "{bcrypt}$2a$10$strong", "$2a$04$weak")).thenReturn(1);
+
+        authService.login("user1", "password", CLIENT_ADDRESS);
+
+        Assertions.assertEquals("{bcrypt}$2a$10$strong", user.getPassword());
     }
 }
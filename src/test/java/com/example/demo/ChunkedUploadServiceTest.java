@@ -0,0 +1,189 @@
+package com.example.demo;
+
+import com.example.demo.config.CompressionProperties;
+import com.example.demo.config.ContentCacheProperties;
+import com.example.demo.config.MetadataCacheProperties;
+import com.example.demo.config.QuotaProperties;
+import com.example.demo.config.StorageProperties;
+import com.example.demo.dto.StorageUsage;
+import com.example.demo.entities.Blob;
+import com.example.demo.entities.File;
+import com.example.demo.entities.UploadSession;
+import com.example.demo.entities.User;
+import com.example.demo.repositories.BlobRepository;
+import com.example.demo.repositories.FileRepository;
+import com.example.demo.repositories.UploadPartRepository;
+import com.example.demo.repositories.UploadSessionRepository;
+import com.example.demo.repositories.StorageIntentRepository;
+import com.example.demo.repositories.UserRepository;
+import com.example.demo.services.BlobContentCache;
+import com.example.demo.services.BlobStore;
+import com.example.demo.services.ChunkedUploadService;
+import com.example.demo.services.CompressionPolicy;
+import com.example.demo.services.FileMetadataCache;
+import com.example.demo.services.FileService;
+import com.example.demo.services.LocalStorageBackend;
+import com.example.demo.services.QuotaService;
+import com.example.demo.services.StorageBackend;
+import com.example.demo.services.TransferMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ChunkedUploadServiceTest {
+    private static final int PART_SIZE = 1024 * 1024;
+
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    private UploadPartRepository uploadPartRepository;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private StorageIntentRepository intentRepository;
+
+    private FileService fileService;
+
+    private ChunkedUploadService chunkedUploadService;
+
+    private User testUser;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        StorageBackend storage = new LocalStorageBackend(new StorageProperties.Local(List.of(Paths.get("file-storage")), 64));
+        fileService = new FileService(fileRepository, new BlobStore(blobRepository, new CompressionPolicy(
+                new CompressionProperties(true, DataSize.ofKilobytes(64), 0.8, 1)),
+                new BlobContentCache(new ContentCacheProperties(true, DataSize.ofKilobytes(256), DataSize.ofMegabytes(1)),
+                        new SimpleMeterRegistry()), storage,
+                TransactionOperations.withoutTransaction()), storage,
+                new QuotaService(userRepository, new QuotaProperties(DataSize.ofGigabytes(10))),
+                new TransferMetrics(new SimpleMeterRegistry()),
+                new FileMetadataCache(new MetadataCacheProperties(100, Duration.ofMinutes(1)), new SimpleMeterRegistry()),
+                intentRepository);
+        when(userRepository.reserveBytes(anyInt(), anyLong(), anyLong())).thenReturn(1);
+        when(userRepository.findUsage(anyInt(), anyLong())).thenReturn(Optional.of(usage(0, 10L * PART_SIZE)));
+        chunkedUploadService = new ChunkedUploadService(uploadSessionRepository, uploadPartRepository,
+                fileRepository, fileService, storage);
+        when(blobRepository.getReferenceById(anyString())).thenAnswer(invocation -> {
+            Blob blob = new Blob();
+            blob.setDigest(invocation.getArgument(0));
+            return blob;
+        });
+        testUser = new User();
+        testUser.setId(7);
+        when(uploadSessionRepository.save(any(UploadSession.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void uploadParts_OutOfOrder_AssemblesFileOnComplete() throws IOException {
+        byte[] content = new byte[PART_SIZE * 2 + 100];
+        new Random(42).nextBytes(content);
+
+        UploadSession session = chunkedUploadService.initiate("large.bin", content.length, PART_SIZE, testUser);
+        assertEquals(3, session.getPartCount());
+        when(uploadSessionRepository.findById(session.getId())).thenReturn(Optional.of(session));
+
+        for (int partNumber : new int[]{3, 1, 2}) {
+            int offset = (partNumber - 1) * PART_SIZE;
+            byte[] part = Arrays.copyOfRange(content, offset, Math.min(offset + PART_SIZE, content.length));
+            chunkedUploadService.uploadPart(session.getId(), partNumber, new ByteArrayInputStream(part), testUser);
+        }
+        when(uploadPartRepository.countBySessionId(session.getId())).thenReturn(3L);
+
+        chunkedUploadService.complete(session.getId(), testUser);
+
+        ArgumentCaptor<File> saved = ArgumentCaptor.forClass(File.class);
+        verify(fileRepository, times(1)).save(saved.capture());
+        Path stored = storedPath(saved.getValue());
+        assertArrayEquals(content, Files.readAllBytes(stored));
+        Files.deleteIfExists(stored);
+        verify(uploadSessionRepository, times(1)).delete(session);
+    }
+
+    @Test
+    void initiate_RejectsUploadThatExceedsQuota() {
+        when(userRepository.findUsage(anyInt(), anyLong())).thenReturn(Optional.of(usage(9L * PART_SIZE, 10L * PART_SIZE)));
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () ->
+                chunkedUploadService.initiate("large.bin", PART_SIZE * 2L, PART_SIZE, testUser));
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, exception.getStatusCode());
+        verify(uploadSessionRepository, never()).save(any(UploadSession.class));
+    }
+
+    @Test
+    void uploadPart_ShouldRejectShortPart() {
+        UploadSession session = chunkedUploadService.initiate("large.bin", PART_SIZE * 2L, PART_SIZE, testUser);
+        when(uploadSessionRepository.findById(session.getId())).thenReturn(Optional.of(session));
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () ->
+                chunkedUploadService.uploadPart(session.getId(), 1, new ByteArrayInputStream(new byte[10]), testUser));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        verify(uploadPartRepository, never()).save(any());
+        chunkedUploadService.abort(session.getId(), testUser);
+    }
+
+    @Test
+    void complete_ShouldFail_WhenPartsAreMissing() {
+        UploadSession session = chunkedUploadService.initiate("large.bin", PART_SIZE * 2L, PART_SIZE, testUser);
+        when(uploadSessionRepository.findById(session.getId())).thenReturn(Optional.of(session));
+        when(uploadPartRepository.countBySessionId(session.getId())).thenReturn(1L);
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () ->
+                chunkedUploadService.complete(session.getId(), testUser));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        verify(fileRepository, never()).save(any());
+        chunkedUploadService.abort(session.getId(), testUser);
+    }
+
+    private static StorageUsage usage(long used, long quota) {
+        return new StorageUsage() {
+            @Override
+            public long getUsed() {
+                return used;
+            }
+
+            @Override
+            public long getQuota() {
+                return quota;
+            }
+        };
+    }
+
+    private Path storedPath(File file) throws IOException {
+        return fileService.storedContent(file, testUser).getFile().toPath();
+    }
+}
@@ -0,0 +1,484 @@
+package com.example.demo;
+
+import com.example.demo.dto.DeletedFile;
+import com.example.demo.dto.FileListItem;
+import com.example.demo.dto.FilePage;
+import com.example.demo.dto.FileSearch;
+import com.example.demo.entities.File;
+import com.example.demo.entities.User;
+import com.example.demo.repositories.FileRepository;
+import com.example.demo.repositories.StorageIntentRepository;
+import com.example.demo.repositories.UserRepository;
+import com.example.demo.services.BlobStore;
+import com.example.demo.services.DeletionPipeline;
+import com.example.demo.services.FileService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Testcontainers
+// the tests purge deleted files themselves, the background pipeline must not get to them first
+@SpringBootTest(properties = "storage.deletion.poll-interval=1h")
+@AutoConfigureMockMvc
+class CloudControllerIT {
+
+    @Container
+    static PostgreSQLContainer<?> postgreSQLContainer = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("testdb")
+            .withUsername("testuser")
+            .withPassword("testpass");
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private StorageIntentRepository intentRepository;
+
+    @Autowired
+    private DeletionPipeline deletionPipeline;
+
+    @BeforeAll
+    static void beforeAll() {
+        postgreSQLContainer.start();
+        System.setProperty("spring.datasource.url", postgreSQLContainer.getJdbcUrl());
+        System.setProperty("spring.datasource.username", postgreSQLContainer.getUsername());
+        System.setProperty("spring.datasource.password", postgreSQLContainer.getPassword());
+    }
+
+    @Test
+    void contextLoads() {
+        assertTrue(postgreSQLContainer.isRunning());
+    }
+
+    @Test
+    @Transactional
+    void login_IntegrationTest() throws Exception {
+        User user = new User();
+        user.setLogin("user");
+        user.setPassword(passwordEncoder.encode("user"));
+        userRepository.save(user);
+
+        Optional<User> savedUser = userRepository.findByLogin("user");
+        assertTrue(savedUser.isPresent(), "Пользователь не был сохранен в базе данных");
+        assertTrue(passwordEncoder.matches("user", savedUser.get().getPassword()), "Пароль не совпадает");
+
+        String requestBody = "{\"login\":\"user\",\"password\":\"user\"}";
+
+        mockMvc.perform(post("/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(requestBody))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.auth-token").isNotEmpty());
+    }
+
+    @Test
+    @Transactional
+    void hotQueries_UseIndexes() {
+        User user = newUser("explain");
+        for (int i = 0; i < 50; i++) {
+            insertFile(user, "file-" + i, i, Instant.now());
+        }
+        jdbcTemplate.execute("analyze users");
+        jdbcTemplate.execute("analyze file");
+        // the tables are tiny, so make sure the planner only falls back to a scan when no index fits
+        jdbcTemplate.execute("set local enable_seqscan = off");
+
+        assertUsesIndex("users_login_key", () -> userRepository.findByLogin(user.getLogin()));
+        assertUsesIndex("file_user_id_filename_key",
+                () -> fileRepository.findPageByFilename(user.getId(), "file-1", Limit.of(21)));
+        assertUsesIndex("file_user_id_id_idx",
+                () -> fileRepository.findPageById(user.getId(), 10, Limit.of(21)));
+        assertUsesIndex("file_user_id_size_id_idx",
+                () -> fileRepository.findPageBySize(user.getId(), 5, 3, Limit.of(21)));
+    }
+
+    @Test
+    void deletedFile_IsRestorableUntilPurged() throws Exception {
+        User user = newUser("deletion");
+        fileService.addNewFile("report.txt", textFile("first version " + user.getId()), user);
+        File first = fileService.findByUserAndFilename(user, "report.txt").orElseThrow();
+        String firstDigest = first.getBlob().getDigest();
+
+        fileService.deleteFile(first, user);
+        assertTrue(fileService.findByUserAndFilename(user, "report.txt").isEmpty());
+        assertEquals(1, refCount(firstDigest), "A deleted file keeps its blob until it is purged");
+
+        fileService.restoreFile("report.txt", user);
+        assertEquals(first.getId(), fileService.findByUserAndFilename(user, "report.txt").orElseThrow().getId());
+
+        // the partial unique index lets the name be reused while the old file waits for its purge
+        fileService.deleteFile(first, user);
+        fileService.addNewFile("report.txt", textFile("second version " + user.getId()), user);
+        File second = fileService.findByUserAndFilename(user, "report.txt").orElseThrow();
+        String secondDigest = second.getBlob().getDigest();
+        ResponseStatusException conflict = assertThrows(ResponseStatusException.class,
+                () -> fileService.restoreFile("report.txt", user));
+        assertEquals(HttpStatus.CONFLICT, conflict.getStatusCode());
+        assertEquals(second.getId(), fileService.findByUserAndFilename(user, "report.txt").orElseThrow().getId());
+        assertEquals(0, openIntents(user), "Every operation closes its intent");
+
+        fileService.deleteFile(second, user);
+        expireDeletions(user);
+        assertEquals(2, deletionPipeline.purgeBatch());
+
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "select count(*) from file where user_id = ?", Integer.class, user.getId()));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "select count(*) from blob where digest in (?, ?)", Integer.class, firstDigest, secondDigest));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "select count(*) from storage_intent where digest in (?, ?)", Integer.class, firstDigest, secondDigest));
+    }
+
+    @Test
+    void purgeDeleted_JournalsBlobsAndSkipsLockedRows() throws Exception {
+        User user = newUser("purge");
+        fileService.addNewFile("a.txt", textFile("a " + user.getId()), user);
+        fileService.addNewFile("b.txt", textFile("b " + user.getId()), user);
+        File a = fileService.findByUserAndFilename(user, "a.txt").orElseThrow();
+        String bDigest = fileService.findByUserAndFilename(user, "b.txt").orElseThrow().getBlob().getDigest();
+        assertEquals(List.of("a.txt", "b.txt"), fileService.deleteFiles(List.of("a.txt", "b.txt", "missing.txt"), user)
+                .stream().sorted().toList());
+        expireDeletions(user);
+
+        UUID operation = UUID.randomUUID();
+        // while another purge holds a.txt, this one takes b.txt only
+        List<DeletedFile> purged = transactionTemplate.execute(status -> {
+            jdbcTemplate.queryForObject("select id from file where id = ? for update", Integer.class, a.getId());
+            return CompletableFuture.supplyAsync(() -> fileRepository.purgeDeleted(
+                    Instant.now().minus(Duration.ofMinutes(15)), 10, operation)).join();
+        });
+
+        assertEquals(List.of("b.txt"), purged.stream().map(DeletedFile::getFilename).toList());
+        assertEquals(List.of(bDigest), jdbcTemplate.queryForList(
+                "select digest from storage_intent where operation = ?", String.class, operation));
+        assertEquals(1, refCount(bDigest), "The purge statement only journals the blob, the caller releases it");
+
+        blobStore.releaseAll(List.of(bDigest));
+        intentRepository.close(operation);
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "select count(*) from blob where digest = ?", Integer.class, bDigest));
+        assertEquals(1, deletionPipeline.purgeBatch());
+    }
+
+    @Test
+    @Transactional
+    void purgeDeleted_UsesDeletionQueueIndex() {
+        User user = newUser("queue");
+        for (int i = 0; i < 50; i++) {
+            insertFile(user, "file-" + i, i, Instant.now());
+        }
+        jdbcTemplate.update("update file set deleted_at = now() - interval '1 hour' where user_id = ? and size < 5",
+                user.getId());
+        jdbcTemplate.execute("analyze file");
+        jdbcTemplate.execute("set local enable_seqscan = off");
+
+        assertEquals("CREATE UNIQUE INDEX file_user_id_filename_key ON public.file USING btree (user_id, filename) "
+                        + "WHERE (deleted_at IS NULL)",
+                jdbcTemplate.queryForObject("select indexdef from pg_indexes where indexname = 'file_user_id_filename_key'",
+                        String.class));
+        assertUsesIndex("file_deleted_at_idx",
+                () -> fileRepository.purgeDeleted(Instant.now().minus(Duration.ofMinutes(15)), 10, UUID.randomUUID()));
+    }
+
+    @Test
+    @Transactional
+    void searchFiles_MatchesNamesLiterally() {
+        User user = newUser("search");
+        Instant now = Instant.now();
+        insertFile(user, "Report_2024.pdf", 100, now);
+        insertFile(user, "Report-2024.pdf", 200, now);
+        insertFile(user, "report%final.txt", 300, now);
+        insertFile(user, "reportXfinal.txt", 400, now);
+        insertFile(user, "notes.txt", 500, now);
+        insertFile(user, "photo.PNG", 600, now);
+
+        assertEquals(List.of("Report-2024.pdf", "Report_2024.pdf", "report%final.txt", "reportXfinal.txt"),
+                search(user, "REPORT", FileSearch.Match.PREFIX));
+        assertEquals(List.of("report%final.txt"), search(user, "report%", FileSearch.Match.PREFIX));
+        assertEquals(List.of("Report_2024.pdf"), search(user, "_2024", FileSearch.Match.SUBSTRING));
+        assertEquals(List.of("report%final.txt", "reportXfinal.txt"), search(user, "final", FileSearch.Match.SUBSTRING));
+        assertEquals(List.of("notes.txt", "report%final.txt", "reportXfinal.txt"), search(user, ".txt", FileSearch.Match.EXTENSION));
+        assertEquals(List.of("photo.PNG"), search(user, "png", FileSearch.Match.EXTENSION));
+        assertEquals(List.of(), search(user, "pd", FileSearch.Match.EXTENSION));
+    }
+
+    @Test
+    @Transactional
+    void searchFiles_FiltersBySizeAndUploadTime() {
+        User user = newUser("search");
+        // the database keeps microseconds, a bound must compare the same way once stored
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        insertFile(user, "old.txt", 10, now.minus(Duration.ofDays(30)));
+        insertFile(user, "recent.txt", 1_000, now.minus(Duration.ofDays(1)));
+        insertFile(user, "new.txt", 100_000, now);
+
+        assertEquals(List.of("new.txt", "old.txt", "recent.txt"),
+                search(user, new FileSearch("", FileSearch.Match.SUBSTRING, null, null, null, null)));
+        assertEquals(List.of("new.txt", "recent.txt"),
+                search(user, new FileSearch("", FileSearch.Match.SUBSTRING, 1_000L, null, null, null)));
+        assertEquals(List.of("old.txt", "recent.txt"),
+                search(user, new FileSearch("", FileSearch.Match.SUBSTRING, null, 1_000L, null, null)));
+        assertEquals(List.of("new.txt", "recent.txt"),
+                search(user, new FileSearch("", FileSearch.Match.SUBSTRING, null, null, now.minus(Duration.ofDays(2)), null)));
+        assertEquals(List.of("old.txt", "recent.txt"),
+                search(user, new FileSearch("", FileSearch.Match.SUBSTRING, null, null, null, now)));
+        assertEquals(List.of("recent.txt"),
+                search(user, new FileSearch(".txt", FileSearch.Match.EXTENSION, 100L, 10_000L,
+                        now.minus(Duration.ofDays(2)), now)));
+    }
+
+    @Test
+    @Transactional
+    void searchFiles_PagesWithCursor() {
+        User user = newUser("search");
+        for (int i = 0; i < 7; i++) {
+            insertFile(user, "page-" + i + ".txt", i, Instant.now());
+        }
+        insertFile(user, "other.txt", 1, Instant.now());
+        FileSearch search = new FileSearch("page-", FileSearch.Match.PREFIX, null, null, null, null);
+
+        List<String> names = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            FilePage page = fileService.searchFiles(user, search, cursor, 3);
+            page.files().forEach(file -> names.add(file.filename()));
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(IntStream.range(0, 7).mapToObj(i -> "page-" + i + ".txt").toList(), names);
+    }
+
+    @Test
+    @Transactional
+    void searchFiles_UsesTrigramIndex() {
+        User user = newUser("search");
+        // enough of the user's files that walking them in name order costs more than the trigram lookup
+        jdbcTemplate.update("insert into file (filename, size, user_id) "
+                + "select 'file-' || i || '.txt', i, ? from generate_series(1, 5000) i", user.getId());
+        jdbcTemplate.execute("analyze file");
+        jdbcTemplate.execute("set local enable_seqscan = off");
+
+        assertUsesIndex("file_user_id_filename_trgm_idx",
+                () -> search(user, "le-4242", FileSearch.Match.SUBSTRING));
+    }
+
+    private List<String> search(User user, String name, FileSearch.Match match) {
+        return search(user, new FileSearch(name, match, null, null, null, null));
+    }
+
+    private List<String> search(User user, FileSearch search) {
+        // names are compared in Java order, the database collation may sort them differently
+        return fileService.searchFiles(user, search, null, 100).files().stream()
+                .map(FileListItem::filename)
+                .sorted()
+                .toList();
+    }
+
+    private void insertFile(User user, String filename, long size, Instant createdAt) {
+        jdbcTemplate.update("insert into file (filename, size, user_id, created_at) values (?, ?, ?, ?)",
+                filename, size, user.getId(), Timestamp.from(createdAt));
+    }
+
+    private User newUser(String prefix) {
+        User user = new User();
+        user.setLogin(prefix + "-" + UUID.randomUUID());
+        user.setPassword(passwordEncoder.encode("secret"));
+        return userRepository.save(user);
+    }
+
+    private static MockMultipartFile textFile(String content) {
+        return new MockMultipartFile("file", "file.txt", "text/plain", content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long refCount(String digest) {
+        return jdbcTemplate.queryForObject("select ref_count from blob where digest = ?", Long.class, digest);
+    }
+
+    private int openIntents(User user) {
+        return jdbcTemplate.queryForObject("select count(*) from storage_intent where user_id = ?", Integer.class, user.getId());
+    }
+
+    private void expireDeletions(User user) {
+        jdbcTemplate.update("update file set deleted_at = now() - interval '1 hour' where user_id = ? and deleted_at is not null",
+                user.getId());
+    }
+
+    /**
+     * Runs the query and explains the last statement it sent, with the same bind values, on the
+     * connection of the current transaction.
+     */
+    private void assertUsesIndex(String index, Runnable query) {
+        StatementRecorder.clear();
+        query.run();
+        RecordedStatement statement = StatementRecorder.last();
+        List<String> plan = jdbcTemplate.execute((ConnectionCallback<List<String>>) connection -> {
+            try (PreparedStatement explain = connection.prepareStatement("explain " + statement.sql())) {
+                for (Bind bind : statement.binds()) {
+                    bind.method().invoke(explain, bind.args());
+                }
+                List<String> lines = new ArrayList<>();
+                try (ResultSet resultSet = explain.executeQuery()) {
+                    while (resultSet.next()) {
+                        lines.add(resultSet.getString(1));
+                    }
+                }
+                return lines;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot replay the bind values of " + statement.sql(), e);
+            }
+        });
+        String text = String.join("\n", plan);
+        assertTrue(text.contains(index), "Expected " + index + " in plan of " + statement.sql() + ":\n" + text);
+    }
+
+    record Bind(Method method, Object[] args) {
+    }
+
+    record RecordedStatement(String sql, List<Bind> binds) {
+    }
+
+    @TestConfiguration
+    static class StatementRecording {
+
+        @Bean
+        static BeanPostProcessor statementRecorder() {
+            return new StatementRecorder();
+        }
+    }
+
+    /**
+     * Wraps the data source so the statements this thread prepares are recorded with their bind
+     * calls. The plan checks explain exactly what Hibernate sends instead of hand-written SQL.
+     */
+    static class StatementRecorder implements BeanPostProcessor {
+
+        private static final ThreadLocal<List<RecordedStatement>> statements = ThreadLocal.withInitial(ArrayList::new);
+
+        static void clear() {
+            statements.get().clear();
+        }
+
+        static RecordedStatement last() {
+            List<RecordedStatement> recorded = statements.get();
+            if (recorded.isEmpty()) {
+                throw new AssertionError("No statement was sent");
+            }
+            return recorded.getLast();
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof DataSource dataSource) {
+                return proxy(DataSource.class, dataSource, (method, args, result) ->
+                        result instanceof Connection connection ? recording(connection) : result);
+            }
+            return bean;
+        }
+
+        private static Connection recording(Connection connection) {
+            return proxy(Connection.class, connection, (method, args, result) -> {
+                if (result instanceof PreparedStatement prepared && method.getName().equals("prepareStatement")) {
+                    RecordedStatement statement = new RecordedStatement((String) args[0], new ArrayList<>());
+                    statements.get().add(statement);
+                    return recording(prepared, statement);
+                }
+                return result;
+            });
+        }
+
+        private static PreparedStatement recording(PreparedStatement prepared, RecordedStatement statement) {
+            return proxy(PreparedStatement.class, prepared, (method, args, result) -> {
+                if (method.getName().startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                    statement.binds().add(new Bind(method, args));
+                }
+                return result;
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, T target, Interceptor interceptor) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                try {
+                    return interceptor.intercept(method, args, method.invoke(target, args));
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        }
+
+        private interface Interceptor {
+            Object intercept(Method method, Object[] args, Object result);
+        }
+    }
+}
@@ -1,25 +1,59 @@
 package com.example.demo;
 
+import com.example.demo.config.FilePageHttpMessageConverter;
 import com.example.demo.controller.CloudController;
+import com.example.demo.dto.FileListItem;
+import com.example.demo.dto.FilePage;
+import com.example.demo.dto.FileSort;
+import com.example.demo.entities.Blob;
+import com.example.demo.entities.File;
 import com.example.demo.entities.User;
 import com.example.demo.services.AuthService;
 import com.example.demo.services.FileService;
+import com.example.demo.services.TransferMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.method.annotation.AuthenticationPrincipalArgumentResolver;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -27,12 +61,17 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @ExtendWith(MockitoExtension.class)
 class CloudControllerTest {
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @Mock
     private AuthService authService;
 
     @Mock
     private FileService fileService;
 
+    @Spy
+    private TransferMetrics transferMetrics = new TransferMetrics(meterRegistry);
+
     private MockMvc mockMvc;
 
     @InjectMocks
@@ -40,7 +79,14 @@ class CloudControllerTest {
 
     @BeforeEach
     void setUp() {
-        mockMvc = MockMvcBuilders.standaloneSetup(cloudController).build();
+        mockMvc = MockMvcBuilders.standaloneSetup(cloudController)
+                .setCustomArgumentResolvers(new AuthenticationPrincipalArgumentResolver())
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
     }
 
     @Test
@@ -49,7 +95,7 @@ class CloudControllerTest {
         String password = "password";
         String token = "mocked-token";
 
-        Mockito.when(authService.login(login, password))
+        Mockito.when(authService.login(login, password, "127.0.0.1"))
                 .thenReturn(token);
 
         String requestBody = "{\"login\":\"user1\",\"password\":\"password\"}";
@@ -67,7 +113,7 @@ class CloudControllerTest {
         MockMultipartFile file = new MockMultipartFile("file", "test.txt", "text/plain", "Hello World".getBytes());
 
         User mockUser = new User();
-        Mockito.when(authService.authenticate(token)).thenReturn(mockUser);
+        authenticateAs(mockUser);
 
         Mockito.doNothing().when(fileService).addNewFile(Mockito.eq(filename), Mockito.any(MultipartFile.class), Mockito.eq(mockUser));
 
@@ -79,4 +125,230 @@ class CloudControllerTest {
         Mockito.verify(fileService, Mockito.times(1))
                 .addNewFile(Mockito.eq(filename),Mockito.any(MultipartFile.class), Mockito.eq(mockUser));
     }
+
+    @Test
+    void uploadFile_NameTaken_ReturnsConflict() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "test.txt", "text/plain", "Hello World".getBytes());
+        User mockUser = new User();
+        authenticateAs(mockUser);
+
+        Mockito.doThrow(new ResponseStatusException(HttpStatus.CONFLICT, "File with this name already exists"))
+                .when(fileService).addNewFile(Mockito.eq("test.txt"), Mockito.any(MultipartFile.class), Mockito.eq(mockUser));
+
+        mockMvc.perform(multipart("/file")
+                        .file(file)
+                        .param("filename", "test.txt")
+                        .header("auth-token", "mocked-token"))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.message").value("File with this name already exists"))
+                .andExpect(jsonPath("$.id").value(409));
+    }
+
+    @Test
+    void downloadFile_RangeRequest_ReturnsPartialContent() throws Exception {
+        String token = "mocked-token";
+        String filename = "download-range.txt";
+        User mockUser = new User();
+        mockUser.setId(42);
+        Path filePath = writeStoredFile(mockUser, filename, "0123456789");
+
+        authenticateAs(mockUser);
+        File file = new File();
+        Mockito.when(fileService.findByUserAndFilename(mockUser, filename)).thenReturn(Optional.of(file));
+        Mockito.when(fileService.storedContent(file, mockUser)).thenReturn(new FileSystemResource(filePath));
+
+        try {
+            mockMvc.perform(get("/file")
+                            .param("filename", filename)
+                            .header("auth-token", token)
+                            .header(HttpHeaders.RANGE, "bytes=2-5"))
+                    .andExpect(status().isPartialContent())
+                    .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                    .andExpect(content().string("2345"));
+
+            mockMvc.perform(get("/file")
+                            .param("filename", filename)
+                            .header("auth-token", token)
+                            .header(HttpHeaders.RANGE, "bytes=2-5")
+                            .header(HttpHeaders.IF_RANGE, "\"stale\""))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string("0123456789"));
+
+            mockMvc.perform(get("/file")
+                            .param("filename", filename)
+                            .header("auth-token", token)
+                            .header(HttpHeaders.RANGE, "bytes=20-30"))
+                    .andExpect(status().isRequestedRangeNotSatisfiable())
+                    .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+        } finally {
+            Files.deleteIfExists(filePath);
+            Files.deleteIfExists(filePath.getParent());
+        }
+    }
+
+    @Test
+    void downloadFile_CachedContent_ServedFromMemory() throws Exception {
+        String token = "mocked-token";
+        String filename = "download-cached.txt";
+        User mockUser = new User();
+        mockUser.setId(44);
+        Path filePath = writeStoredFile(mockUser, filename, "0123456789");
+
+        authenticateAs(mockUser);
+        Blob blob = new Blob();
+        blob.setDigest("cd".repeat(32));
+        blob.setSize(10);
+        blob.setStoredSize(10);
+        File file = new File();
+        file.setCreatedAt(Instant.now());
+        file.setBlob(blob);
+        Mockito.when(fileService.findByUserAndFilename(mockUser, filename)).thenReturn(Optional.of(file));
+        Mockito.when(fileService.cachedContent(file)).thenAnswer(invocation -> {
+            ByteBuffer cached = ByteBuffer.allocateDirect(10);
+            return cached.put("0123456789".getBytes(StandardCharsets.US_ASCII)).flip();
+        });
+
+        try {
+            // the copy on disk is replaced, so only a response from memory has the original content
+            Files.writeString(filePath, "abcdefghij");
+            mockMvc.perform(get("/file")
+                            .param("filename", filename)
+                            .header("auth-token", token))
+                    .andExpect(status().isOk())
+                    .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 10))
+                    .andExpect(content().string("0123456789"));
+
+            mockMvc.perform(get("/file")
+                            .param("filename", filename)
+                            .header("auth-token", token)
+                            .header(HttpHeaders.RANGE, "bytes=2-5"))
+                    .andExpect(status().isPartialContent())
+                    .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                    .andExpect(content().string("2345"));
+            Mockito.verify(transferMetrics).recordDownload(10, "cache");
+            // only the full body is timed, the range is written region by region
+            assertEquals(1, meterRegistry.get("storage.download.duration").tag("mode", "cache").timer().count());
+            assertEquals(1, meterRegistry.get("storage.download.throughput").tag("mode", "cache").summary().count());
+            Mockito.verify(fileService, Mockito.never()).storedContent(file, mockUser);
+        } finally {
+            Files.deleteIfExists(filePath);
+            Files.deleteIfExists(filePath.getParent());
+        }
+    }
+
+    @Test
+    void downloadFile_MatchingETag_ReturnsNotModified() throws Exception {
+        String token = "mocked-token";
+        String filename = "download-etag.txt";
+        User mockUser = new User();
+        mockUser.setId(43);
+        Path filePath = writeStoredFile(mockUser, filename, "Hello World");
+
+        authenticateAs(mockUser);
+        File file = new File();
+        Mockito.when(fileService.findByUserAndFilename(mockUser, filename)).thenReturn(Optional.of(file));
+        Mockito.when(fileService.storedContent(file, mockUser)).thenReturn(new FileSystemResource(filePath));
+
+        try {
+            String eTag = mockMvc.perform(get("/file")
+                            .param("filename", filename)
+                            .header("auth-token", token))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string("Hello World"))
+                    .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+            mockMvc.perform(get("/file")
+                            .param("filename", filename)
+                            .header("auth-token", token)
+                            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                    .andExpect(status().isNotModified());
+        } finally {
+            Files.deleteIfExists(filePath);
+            Files.deleteIfExists(filePath.getParent());
+        }
+    }
+
+    @Test
+    void downloadFile_CompressedBlob_PassesGzipThroughOrDecompresses() throws Exception {
+        String filename = "download-gzip.txt";
+        String original = "compressible ".repeat(100);
+        User mockUser = new User();
+        mockUser.setId(45);
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(original.getBytes(StandardCharsets.UTF_8));
+        }
+        Path filePath = writeStoredFile(mockUser, filename, "");
+        Files.write(filePath, gzipped.toByteArray());
+
+        authenticateAs(mockUser);
+        Blob blob = new Blob();
+        blob.setDigest("ab".repeat(32));
+        blob.setSize(original.length());
+        blob.setCodec(Blob.Codec.GZIP);
+        blob.setStoredSize(gzipped.size());
+        File file = new File();
+        file.setCreatedAt(Instant.now());
+        file.setBlob(blob);
+        Mockito.when(fileService.findByUserAndFilename(mockUser, filename)).thenReturn(Optional.of(file));
+        Mockito.when(fileService.storedContent(file, mockUser)).thenReturn(new FileSystemResource(filePath));
+        Mockito.when(fileService.openContent(file, mockUser)).thenAnswer(invocation -> new GZIPInputStream(Files.newInputStream(filePath)));
+
+        try {
+            mockMvc.perform(get("/file")
+                            .param("filename", filename)
+                            .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                    .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                    .andExpect(header().string(HttpHeaders.ETAG, "\"" + blob.getDigest() + "-gzip\""))
+                    .andExpect(content().bytes(gzipped.toByteArray()));
+
+            mockMvc.perform(get("/file")
+                            .param("filename", filename)
+                            .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, identity")
+                            .header(HttpHeaders.RANGE, "bytes=0-3"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                    .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "none"))
+                    .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, original.length()))
+                    .andExpect(content().string(original));
+        } finally {
+            Files.deleteIfExists(filePath);
+            Files.deleteIfExists(filePath.getParent());
+        }
+    }
+
+    @Test
+    void listFiles_ReturnsItemsAndNextCursor() throws Exception {
+        User mockUser = new User();
+        mockUser.setId(44);
+        authenticateAs(mockUser);
+        FilePage page = new FilePage(List.of(new FileListItem(1, "a.txt", 10, Instant.parse("2026-01-01T00:00:00Z"), null)),
+                "next-cursor");
+        Mockito.when(fileService.listFiles(mockUser, FileSort.NAME, null, 1)).thenReturn(page);
+
+        MockMvc listMockMvc = MockMvcBuilders.standaloneSetup(cloudController)
+                .setCustomArgumentResolvers(new AuthenticationPrincipalArgumentResolver())
+                .setMessageConverters(new FilePageHttpMessageConverter(), new MappingJackson2HttpMessageConverter())
+                .build();
+        listMockMvc.perform(get("/list").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(CloudController.NEXT_CURSOR_HEADER, "next-cursor"))
+                .andExpect(jsonPath("$[0].filename").value("a.txt"))
+                .andExpect(jsonPath("$[0].size").value(10))
+                .andExpect(jsonPath("$[0].createdAt").value("2026-01-01T00:00:00Z"))
+                .andExpect(jsonPath("$[0].user").doesNotExist());
+    }
+
+    private void authenticateAs(User user) {
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated(user, null, List.of()));
+    }
+
+    private Path writeStoredFile(User user, String filename, String content) throws Exception {
+        Path userDirectory = Paths.get("file-storage", String.valueOf(user.getId()));
+        Files.createDirectories(userDirectory);
+        return Files.writeString(userDirectory.resolve(filename), content);
+    }
 }
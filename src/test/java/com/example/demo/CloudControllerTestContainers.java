@@ -1,80 +0,0 @@
-package com.example.demo;
-
-import com.example.demo.entities.User;
-import com.example.demo.repositories.UserRepository;
-import org.junit.jupiter.api.BeforeAll;
-import org.junit.jupiter.api.Test;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
-import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.http.MediaType;
-import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.test.web.servlet.MockMvc;
-import org.springframework.transaction.annotation.Transactional;
-import org.testcontainers.containers.PostgreSQLContainer;
-import org.testcontainers.junit.jupiter.Container;
-import org.testcontainers.junit.jupiter.Testcontainers;
-
-import java.util.Optional;
-
-import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
-import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
-
-@Testcontainers
-@SpringBootTest
-@AutoConfigureMockMvc
-class CloudControllerTestContainers {
-
-    @Container
-    static PostgreSQLContainer<?> postgreSQLContainer = new PostgreSQLContainer<>("postgres:13")
-            .withDatabaseName("testdb")
-            .withUsername("testuser")
-            .withPassword("testpass");
-
-    @Autowired
-    private UserRepository userRepository;
-
-    @Autowired
-    private MockMvc mockMvc;
-
-    @Autowired
-    PasswordEncoder passwordEncoder;
-
-    @BeforeAll
-    static void beforeAll() {
-        postgreSQLContainer.start();
-        System.setProperty("spring.datasource.url", postgreSQLContainer.getJdbcUrl());
-        System.setProperty("spring.datasource.username", postgreSQLContainer.getUsername());
-        System.setProperty("spring.datasource.password", postgreSQLContainer.getPassword());
-    }
-
-    @Test
-    void contextLoads() {
-        assertTrue(postgreSQLContainer.isRunning());
-    }
-
-    @Test
-    @Transactional
-    void login_IntegrationTest() throws Exception {
-        User user = new User();
-        user.setLogin("user");
-        user.setPassword(passwordEncoder.encode("user"));
-        userRepository.save(user);
-
-        Optional<User> savedUser = userRepository.findByLogin("user");
-        assertTrue(savedUser.isPresent(), "Пользователь не был сохранен в базе данных");
-        assertTrue(passwordEncoder.matches("user", savedUser.get().getPassword()), "Пароль не совпадает");
-
-        String requestBody = "{\"login\":\"user\",\"password\":\"user\"}";
-
-        mockMvc.perform(post("/login")
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(requestBody))
-                .andDo(print())
-                .andExpect(status().isOk())
-                .andExpect(jsonPath("$.auth-token").isNotEmpty());
-    }
-}
\ No newline at end of file
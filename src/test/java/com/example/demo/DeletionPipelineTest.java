@@ -0,0 +1,135 @@
+package com.example.demo;
+
+import com.example.demo.config.CompressionProperties;
+import com.example.demo.config.ContentCacheProperties;
+import com.example.demo.config.DeletionProperties;
+import com.example.demo.config.StorageProperties;
+import com.example.demo.dto.DeletedFile;
+import com.example.demo.repositories.BlobRepository;
+import com.example.demo.repositories.FileRepository;
+import com.example.demo.repositories.StorageIntentRepository;
+import com.example.demo.services.BlobContentCache;
+import com.example.demo.services.BlobStore;
+import com.example.demo.services.CompressionPolicy;
+import com.example.demo.services.DeletionPipeline;
+import com.example.demo.services.LocalStorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DeletionPipelineTest {
+    @TempDir
+    Path root;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private StorageIntentRepository intentRepository;
+
+    private DeletionPipeline pipeline;
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        LocalStorageBackend storage = new LocalStorageBackend(new StorageProperties.Local(List.of(root), 64));
+        BlobStore blobStore = new BlobStore(blobRepository, new CompressionPolicy(
+                new CompressionProperties(false, DataSize.ofKilobytes(64), 0.8, 1)),
+                new BlobContentCache(new ContentCacheProperties(false, DataSize.ofKilobytes(256), DataSize.ofMegabytes(1)),
+                        new SimpleMeterRegistry()), storage,
+                TransactionOperations.withoutTransaction());
+        registry = new SimpleMeterRegistry();
+        pipeline = new DeletionPipeline(fileRepository, blobStore, storage, intentRepository,
+                new DeletionProperties(Duration.ofMinutes(15), 100, 1000, Duration.ofSeconds(10)), registry);
+    }
+
+    @Test
+    void purgeBatch_ShouldReleaseSharedBlobOncePerReference_AndDeleteLegacyContent() throws IOException {
+        String shared = "ab".repeat(32);
+        String single = "cd".repeat(32);
+        Files.createDirectories(root.resolve("1"));
+        Files.writeString(root.resolve("1/legacy.txt"), "legacy");
+        when(fileRepository.countDeleted()).thenReturn(6L);
+        when(fileRepository.purgeDeleted(any(Instant.class), eq(100), any(UUID.class))).thenReturn(List.of(
+                deletedFile("a.txt", shared), deletedFile("b.txt", shared), deletedFile("c.txt", single),
+                deletedFile("legacy.txt", null)));
+        when(blobRepository.findUnreferenced(anyCollection())).thenReturn(List.of(shared));
+
+        assertEquals(4, pipeline.purgeBatch());
+
+        ArgumentCaptor<Collection<String>> rounds = ArgumentCaptor.forClass(Collection.class);
+        verify(blobRepository, times(2)).decrementRefCounts(rounds.capture());
+        assertEquals(Set.of(shared, single), Set.copyOf(rounds.getAllValues().get(0)));
+        assertEquals(List.of(shared), List.copyOf(rounds.getAllValues().get(1)));
+        verify(blobRepository).deleteUnreferenced(List.of(shared));
+        assertFalse(Files.exists(root.resolve("1/legacy.txt")));
+        verify(intentRepository).close(any(UUID.class));
+        assertEquals(2, registry.get("storage.deletion.queue").gauge().value());
+        assertEquals(4, registry.get("storage.deletion.purged").counter().count());
+    }
+
+    @Test
+    void purgeBatch_ShouldOnlyPurgeFilesPastTheUndeleteWindow() throws IOException {
+        when(fileRepository.purgeDeleted(any(Instant.class), anyInt(), any(UUID.class))).thenReturn(List.of());
+
+        assertEquals(0, pipeline.purgeBatch());
+
+        ArgumentCaptor<Instant> before = ArgumentCaptor.forClass(Instant.class);
+        verify(fileRepository).purgeDeleted(before.capture(), eq(100), any(UUID.class));
+        assertTrue(before.getValue().isBefore(Instant.now().minus(Duration.ofMinutes(14))));
+        verifyNoInteractions(blobRepository);
+    }
+
+    private static DeletedFile deletedFile(String filename, String blobDigest) {
+        return new DeletedFile() {
+            @Override
+            public int getId() {
+                return filename.hashCode();
+            }
+
+            @Override
+            public int getUserId() {
+                return 1;
+            }
+
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+
+            @Override
+            public String getBlobDigest() {
+                return blobDigest;
+            }
+
+            @Override
+            public long getSize() {
+                return 10;
+            }
+        };
+    }
+}
@@ -1,23 +1,64 @@
 package com.example.demo;
 
+import com.example.demo.config.CompressionProperties;
+import com.example.demo.config.ContentCacheProperties;
+import com.example.demo.config.MetadataCacheProperties;
+import com.example.demo.config.QuotaProperties;
+import com.example.demo.config.StorageProperties;
+import com.example.demo.dto.BatchResult;
+import com.example.demo.dto.DeletedFile;
+import com.example.demo.dto.FileListItem;
+import com.example.demo.dto.FilePage;
+import com.example.demo.dto.FileSearch;
+import com.example.demo.dto.FileSort;
+import com.example.demo.entities.Blob;
 import com.example.demo.entities.File;
 import com.example.demo.entities.User;
+import com.example.demo.repositories.BlobRepository;
 import com.example.demo.repositories.FileRepository;
+import com.example.demo.repositories.StorageIntentRepository;
+import com.example.demo.repositories.UserRepository;
+import com.example.demo.services.BlobContentCache;
+import com.example.demo.services.BlobStore;
+import com.example.demo.services.CompressionPolicy;
+import com.example.demo.services.FileMetadataCache;
 import com.example.demo.services.FileService;
+import com.example.demo.services.LocalStorageBackend;
+import com.example.demo.services.QuotaService;
+import com.example.demo.services.StorageBackend;
+import com.example.demo.services.TransferMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.ArgumentCaptor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.support.TransactionOperations;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.util.unit.DataSize;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.ZipInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -30,14 +71,41 @@ class FileServiceTest {
     @Mock
     private MultipartFile multipartFile;
 
-    @InjectMocks
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private StorageIntentRepository intentRepository;
+
     private FileService fileService;
 
+    private BlobStore blobStore;
+
     private User testUser;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        StorageBackend storage = new LocalStorageBackend(new StorageProperties.Local(List.of(Paths.get("file-storage")), 64));
+        blobStore = new BlobStore(blobRepository, new CompressionPolicy(
+                new CompressionProperties(true, DataSize.ofKilobytes(64), 0.8, 1)),
+                new BlobContentCache(new ContentCacheProperties(true, DataSize.ofKilobytes(256), DataSize.ofMegabytes(1)),
+                        new SimpleMeterRegistry()), storage,
+                TransactionOperations.withoutTransaction());
+        fileService = new FileService(fileRepository, blobStore, storage,
+                new QuotaService(userRepository, new QuotaProperties(DataSize.ofGigabytes(10))),
+                new TransferMetrics(new SimpleMeterRegistry()),
+                new FileMetadataCache(new MetadataCacheProperties(100, Duration.ofMinutes(1)), new SimpleMeterRegistry()),
+                intentRepository);
+        when(userRepository.reserveBytes(anyInt(), anyLong(), anyLong())).thenReturn(1);
+        when(blobRepository.getReferenceById(anyString())).thenAnswer(invocation -> {
+            Blob blob = new Blob();
+            blob.setDigest(invocation.getArgument(0));
+            return blob;
+        });
         testUser = new User();
         testUser.setId(1);
     }
@@ -63,46 +131,454 @@ class FileServiceTest {
     }
 
     @Test
-    void addNewFile_ShouldThrowConflict_WhenFileAlreadyExists() {
+    void addNewFile_ShouldThrowConflict_WhenFileAlreadyExists() throws IOException {
+        byte[] fileContent = "Test content".getBytes();
         when(multipartFile.isEmpty()).thenReturn(false);
-        when(fileRepository.existsByFilenameAndUserId("test.txt", testUser.getId())).thenReturn(true);
+        when(multipartFile.getSize()).thenReturn((long) fileContent.length);
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(fileContent));
+        when(fileRepository.save(any(File.class))).thenThrow(new DataIntegrityViolationException("uk_files_user_filename"));
 
         ResponseStatusException exception = assertThrows(ResponseStatusException.class, () ->
                 fileService.addNewFile("test.txt", multipartFile, testUser));
 
         assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
         assertEquals("File with this name already exists", exception.getReason());
+        verify(fileRepository, never()).existsByFilenameAndUserId(anyString(), anyInt());
+        verify(blobRepository).decrementRefCount(anyString());
+        verify(userRepository).releaseBytes(testUser.getId(), fileContent.length);
+        // everything was given back, nothing is left for the reconciler
+        verify(intentRepository).close(any(UUID.class));
+    }
+
+    @Test
+    void cachedContent_ShouldServeSmallBlobsFromMemoryUntilTheyAreReleased() throws IOException {
+        byte[] fileContent = new byte[1024];
+        new Random(7).nextBytes(fileContent);
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(multipartFile.getSize()).thenReturn((long) fileContent.length);
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(fileContent));
+        when(blobRepository.deleteIfUnreferenced(anyString())).thenReturn(1);
+        fileService.addNewFile("random.bin", multipartFile, testUser);
+        ArgumentCaptor<File> saved = ArgumentCaptor.forClass(File.class);
+        verify(fileRepository).save(saved.capture());
+        File file = saved.getValue();
+        file.getBlob().setCodec(Blob.Codec.IDENTITY);
+        file.getBlob().setStoredSize(fileContent.length);
+        Path blobPath = storedPath(file);
+
+        try {
+            assertNull(fileService.cachedContent(file), "A blob read once is served from disk");
+            assertArrayEquals(fileContent, bytes(fileService.cachedContent(file)));
+            Files.delete(blobPath);
+            assertArrayEquals(fileContent, bytes(fileService.cachedContent(file)));
+
+            blobStore.release(file.getBlob());
+            assertNull(fileService.cachedContent(file));
+            assertThrows(IOException.class, () -> fileService.cachedContent(file));
+        } finally {
+            Files.deleteIfExists(blobPath);
+        }
+    }
+
+    @Test
+    void findByUserAndFilename_ShouldServeRepeatedLookupsFromCache() throws IOException {
+        Blob blob = new Blob();
+        blob.setDigest("0".repeat(64));
+        File file = new File();
+        file.setFilename("test.txt");
+        file.setBlob(blob);
+        when(fileRepository.findByUserAndFilename(testUser, "test.txt")).thenReturn(Optional.of(file));
+
+        File first = fileService.findByUserAndFilename(testUser, "test.txt").orElseThrow();
+        File second = fileService.findByUserAndFilename(testUser, "test.txt").orElseThrow();
+        verify(fileRepository, times(1)).findByUserAndFilename(testUser, "test.txt");
+        assertNotSame(first, second);
+        assertEquals("test.txt", second.getFilename());
+
+        fileService.renameFile(first, "renamed.txt", testUser);
+        assertEquals("test.txt", second.getFilename());
+        when(fileRepository.findByUserAndFilename(testUser, "test.txt")).thenReturn(Optional.empty());
+        assertTrue(fileService.findByUserAndFilename(testUser, "test.txt").isEmpty());
+    }
+
+    @Test
+    void renameFile_ShouldConflictAndDropCachedNames_WhenNameWasTakenConcurrently() throws IOException {
+        Blob blob = new Blob();
+        blob.setDigest("0".repeat(64));
+        File file = new File();
+        file.setFilename("test.txt");
+        file.setBlob(blob);
+        when(fileRepository.findByUserAndFilename(testUser, "test.txt")).thenReturn(Optional.of(file));
+        when(fileRepository.save(any(File.class))).thenThrow(new DataIntegrityViolationException("file_user_id_filename_key"));
+        File cached = fileService.findByUserAndFilename(testUser, "test.txt").orElseThrow();
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () ->
+                fileService.renameFile(cached, "taken.txt", testUser));
+
+        assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
+        assertEquals("test.txt", cached.getFilename());
+        assertEquals("test.txt", fileService.findByUserAndFilename(testUser, "test.txt").orElseThrow().getFilename());
+        verify(fileRepository, times(2)).findByUserAndFilename(testUser, "test.txt");
     }
 
     @Test
     void addNewFile_ShouldSaveFileSuccessfully() throws IOException {
         String filename = "test.txt";
         byte[] fileContent = "Test content".getBytes();
-        Path userDirectory = Paths.get("file-storage", String.valueOf(testUser.getId()));
-        Path filePath = userDirectory.resolve(filename);
 
         when(multipartFile.isEmpty()).thenReturn(false);
-        when(multipartFile.getBytes()).thenReturn(fileContent);
-        when(fileRepository.existsByFilenameAndUserId(filename, testUser.getId())).thenReturn(false);
+        when(multipartFile.getSize()).thenReturn((long) fileContent.length);
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(fileContent));
 
         fileService.addNewFile(filename, multipartFile, testUser);
 
+        ArgumentCaptor<File> saved = ArgumentCaptor.forClass(File.class);
+        verify(fileRepository, times(1)).save(saved.capture());
+        verify(blobRepository, times(1)).insertOrReference(anyString(), eq((long) fileContent.length),
+                eq("IDENTITY"), eq((long) fileContent.length));
+        Path blobPath = storedPath(saved.getValue());
+        assertArrayEquals(fileContent, Files.readAllBytes(blobPath));
+
+        Files.deleteIfExists(blobPath);
+    }
+
+    @Test
+    void addNewFile_ShouldJournalUpload_UntilTheRowIsSaved() throws IOException {
+        byte[] fileContent = "Journaled content".getBytes();
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(multipartFile.getSize()).thenReturn((long) fileContent.length);
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(fileContent));
+
+        fileService.addNewFile("journal.txt", multipartFile, testUser);
+
+        ArgumentCaptor<UUID> operation = ArgumentCaptor.forClass(UUID.class);
+        ArgumentCaptor<File> saved = ArgumentCaptor.forClass(File.class);
+        InOrder order = inOrder(intentRepository, userRepository, blobRepository, fileRepository);
+        order.verify(intentRepository).open(operation.capture(), eq(testUser.getId()), isNull());
+        order.verify(userRepository).reserveBytes(anyInt(), anyLong(), anyLong());
+        order.verify(intentRepository).recordDigest(eq(operation.getValue()), anyString());
+        order.verify(blobRepository).insertOrReference(anyString(), anyLong(), anyString(), anyLong());
+        order.verify(fileRepository).save(saved.capture());
+        order.verify(intentRepository).close(operation.getValue());
+        Files.deleteIfExists(storedPath(saved.getValue()));
+    }
+
+    @Test
+    void renameFile_ShouldMoveLegacyFileIntoBlobStore() throws IOException {
+        Path legacyPath = Paths.get("file-storage", "1", "old.txt");
+        Files.createDirectories(legacyPath.getParent());
+        Files.writeString(legacyPath, "legacy content");
+        File file = new File();
+        file.setFilename("old.txt");
+
+        fileService.renameFile(file, "new.txt", testUser);
+
+        verify(fileRepository).save(file);
+        assertEquals("new.txt", file.getFilename());
+        assertNotNull(file.getBlob());
+        assertFalse(Files.exists(legacyPath));
+        Path blobPath = storedPath(file);
+        assertEquals("legacy content", Files.readString(blobPath));
+        Files.deleteIfExists(blobPath);
+    }
+
+    @Test
+    void openContent_ShouldReloadRow_WhenLegacyFileWasMovedElsewhere() throws IOException {
+        Path legacyPath = Paths.get("file-storage", "1", "moved.txt");
+        Files.createDirectories(legacyPath.getParent());
+        Files.writeString(legacyPath, "moved content");
+        File moved = new File();
+        moved.setId(7);
+        moved.setFilename("moved.txt");
+        File stale = moved.copy();
+        fileService.renameFile(moved, "renamed.txt", testUser);
+        when(fileRepository.findById(7)).thenReturn(Optional.of(moved));
+
+        try (InputStream in = fileService.openContent(stale, testUser)) {
+            assertEquals("moved content", new String(in.readAllBytes()));
+        }
+
+        assertSame(moved.getBlob(), stale.getBlob());
+        Files.deleteIfExists(storedPath(moved));
+    }
+
+    @Test
+    void addNewFile_ShouldOnlyReferenceBlob_WhenContentIsKnown() throws IOException {
+        byte[] fileContent = "Known content".getBytes();
+
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(multipartFile.getSize()).thenReturn((long) fileContent.length);
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(fileContent));
+        when(blobRepository.incrementRefCount(anyString())).thenReturn(1);
+
+        fileService.addNewFile("copy.txt", multipartFile, testUser);
+
+        ArgumentCaptor<File> saved = ArgumentCaptor.forClass(File.class);
+        verify(fileRepository, times(1)).save(saved.capture());
+        verify(blobRepository, never()).insertOrReference(anyString(), anyLong(), anyString(), anyLong());
+        assertFalse(Files.exists(storedPath(saved.getValue())));
+    }
+
+    @Test
+    void addNewFile_ShouldStoreCompressibleContentGzipped() throws IOException {
+        byte[] fileContent = "{\"id\": 1, \"status\": \"ok\"}\n".repeat(500).getBytes();
+
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(multipartFile.getSize()).thenReturn((long) fileContent.length);
+        when(multipartFile.getContentType()).thenReturn("application/json");
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(fileContent));
+
+        fileService.addNewFile("events.json", multipartFile, testUser);
+
+        ArgumentCaptor<File> saved = ArgumentCaptor.forClass(File.class);
+        verify(fileRepository).save(saved.capture());
+        Path blobPath = storedPath(saved.getValue());
+        ArgumentCaptor<Long> storedSize = ArgumentCaptor.forClass(Long.class);
+        verify(blobRepository).insertOrReference(anyString(), eq((long) fileContent.length), eq("GZIP"), storedSize.capture());
+        assertEquals(Files.size(blobPath), storedSize.getValue());
+        assertTrue(storedSize.getValue() < fileContent.length / 10);
+
+        Blob blob = saved.getValue().getBlob();
+        blob.setCodec(Blob.Codec.GZIP);
+        try (InputStream in = fileService.openContent(saved.getValue(), testUser)) {
+            assertArrayEquals(fileContent, in.readAllBytes());
+        }
+        Files.deleteIfExists(blobPath);
+    }
+
+    @Test
+    void addNewFile_ShouldStoreIncompressibleContentAsIs() throws IOException {
+        byte[] fileContent = new byte[8192];
+        new Random(7).nextBytes(fileContent);
+
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(multipartFile.getSize()).thenReturn((long) fileContent.length);
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(fileContent));
+
+        fileService.addNewFile("data.bin", multipartFile, testUser);
+
+        ArgumentCaptor<File> saved = ArgumentCaptor.forClass(File.class);
+        verify(fileRepository).save(saved.capture());
+        verify(blobRepository).insertOrReference(anyString(), eq((long) fileContent.length),
+                eq("IDENTITY"), eq((long) fileContent.length));
+        Files.deleteIfExists(storedPath(saved.getValue()));
+    }
+
+    @Test
+    void deleteFile_ShouldOnlyMarkTheRow_AndKeepContentForUndelete() throws IOException {
+        byte[] fileContent = "Deleted content".getBytes();
+
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(multipartFile.getSize()).thenReturn((long) fileContent.length);
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(fileContent));
+        fileService.addNewFile("deleted.txt", multipartFile, testUser);
+        ArgumentCaptor<File> saved = ArgumentCaptor.forClass(File.class);
+        verify(fileRepository).save(saved.capture());
+        Path blobPath = storedPath(saved.getValue());
+        when(fileRepository.markDeleted(saved.getValue().getId())).thenReturn(1);
+
+        try {
+            fileService.deleteFile(saved.getValue(), testUser);
+
+            verify(fileRepository, never()).delete(any(File.class));
+            verify(blobRepository, never()).decrementRefCount(anyString());
+            verify(userRepository).releaseBytes(testUser.getId(), fileContent.length);
+            assertTrue(Files.exists(blobPath));
+        } finally {
+            Files.deleteIfExists(blobPath);
+        }
+    }
+
+    @Test
+    void restoreFile_ShouldGiveQuotaBack_WhenTheNameWasTakenAgain() {
+        when(fileRepository.findDeleted(testUser.getId(), "a.txt")).thenReturn(Optional.of(deletedFile("a.txt", null)));
+        when(fileRepository.restore(5)).thenThrow(new DataIntegrityViolationException("file_user_id_filename_key"));
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () ->
+                fileService.restoreFile("a.txt", testUser));
+
+        assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
+        verify(userRepository).reserveBytes(testUser.getId(), 10, DataSize.ofGigabytes(10).toBytes());
+        verify(userRepository).releaseBytes(testUser.getId(), 10);
+    }
+
+    @Test
+    void addNewFiles_ShouldReportConflictsAndStoreTheRest() {
+        when(fileRepository.findExistingFilenames(eq(testUser.getId()), anyCollection())).thenReturn(List.of("taken.txt"));
+        List<MultipartFile> files = List.of(
+                new MockMultipartFile("files", "new.txt", "text/plain", "new".getBytes()),
+                new MockMultipartFile("files", "taken.txt", "text/plain", "taken".getBytes()),
+                new MockMultipartFile("files", "empty.txt", "text/plain", new byte[0]));
+
+        BatchResult result = fileService.addNewFiles(files, testUser);
+
+        assertEquals(List.of("new.txt"), result.succeeded());
+        assertEquals(List.of(new BatchResult.Failure("taken.txt", "File with this name already exists", 409),
+                new BatchResult.Failure("empty.txt", "File is empty", 400)), result.failed());
         verify(fileRepository, times(1)).save(any(File.class));
+    }
+
+    @Test
+    void deleteFiles_ShouldMarkRowsDeleted_AndReleaseTheirQuota() {
+        when(fileRepository.markDeletedByFilenames(testUser.getId(), List.of("a.txt", "b.txt", "missing.txt")))
+                .thenReturn(List.of(deletedFile("a.txt", "ab".repeat(32)), deletedFile("b.txt", null)));
+
+        List<String> deleted = fileService.deleteFiles(List.of("a.txt", "b.txt", "missing.txt"), testUser);
 
-        Files.deleteIfExists(filePath);
-        Files.deleteIfExists(userDirectory);
+        assertEquals(List.of("a.txt", "b.txt"), deleted);
+        verify(userRepository).releaseBytes(testUser.getId(), 20);
+        verifyNoInteractions(blobRepository);
+    }
+
+    @Test
+    void writeZip_ShouldStreamEveryFileAsAnEntry() throws IOException {
+        byte[] csv = "id,name\n1,a\n".repeat(200).getBytes();
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(multipartFile.getSize()).thenReturn((long) csv.length);
+        when(multipartFile.getContentType()).thenReturn("text/csv");
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(csv));
+        fileService.addNewFile("data.csv", multipartFile, testUser);
+        ArgumentCaptor<File> saved = ArgumentCaptor.forClass(File.class);
+        verify(fileRepository).save(saved.capture());
+        File file = saved.getValue();
+        file.getBlob().setCodec(Blob.Codec.GZIP);
+        Path blobPath = storedPath(file);
+
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+        fileService.writeZip(List.of(file), testUser, zipped);
+
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(zipped.toByteArray()))) {
+            assertEquals("data.csv", zip.getNextEntry().getName());
+            assertArrayEquals(csv, zip.readAllBytes());
+            assertNull(zip.getNextEntry());
+        }
+        Files.deleteIfExists(blobPath);
+    }
+
+    @Test
+    void addNewFile_ShouldRejectUploadOverQuota_BeforeStoringContent() throws IOException {
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(multipartFile.getSize()).thenReturn(100L);
+        when(userRepository.reserveBytes(testUser.getId(), 100L, DataSize.ofGigabytes(10).toBytes())).thenReturn(0);
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () ->
+                fileService.addNewFile("big.bin", multipartFile, testUser));
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, exception.getStatusCode());
+        verify(multipartFile, never()).getInputStream();
+        verify(fileRepository, never()).save(any(File.class));
     }
 
     @Test
     void addNewFile_ShouldThrowInternalServerError_WhenIOExceptionOccurs() throws IOException {
         when(multipartFile.isEmpty()).thenReturn(false);
-        when(fileRepository.existsByFilenameAndUserId("test.txt", testUser.getId())).thenReturn(false);
-        when(multipartFile.getBytes()).thenThrow(new IOException("Disk error"));
+        when(multipartFile.getSize()).thenReturn(42L);
+        when(multipartFile.getInputStream()).thenThrow(new IOException("Disk error"));
 
         ResponseStatusException exception = assertThrows(ResponseStatusException.class, () ->
                 fileService.addNewFile("test.txt", multipartFile, testUser));
 
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getStatusCode());
         assertTrue(Objects.requireNonNull(exception.getReason()).contains("Error saving file to disk"));
+        verify(userRepository).releaseBytes(testUser.getId(), 42);
+        // how far the write got is unknown, the journal entry stays for the reconciler
+        verify(intentRepository, never()).close(any(UUID.class));
+    }
+
+    @Test
+    void listFiles_ShouldReturnCursor_WhenMoreFilesRemain() {
+        when(fileRepository.findPageBySize(testUser.getId(), -1, 0, Limit.of(3)))
+                .thenReturn(List.of(fileRow(10, "a.txt", 5), fileRow(11, "b.txt", 5), fileRow(12, "c.txt", 7)));
+        when(fileRepository.findPageBySize(testUser.getId(), 5, 11, Limit.of(3)))
+                .thenReturn(List.of(fileRow(12, "c.txt", 7)));
+
+        FilePage first = fileService.listFiles(testUser, FileSort.SIZE, null, 2);
+        assertEquals(2, first.files().size());
+        assertNotNull(first.nextCursor());
+
+        FilePage second = fileService.listFiles(testUser, FileSort.SIZE, first.nextCursor(), 2);
+        assertEquals(List.of("c.txt"), second.files().stream().map(FileListItem::filename).toList());
+        assertNull(second.nextCursor());
+    }
+
+    @Test
+    void listFiles_ShouldRejectCursorOfAnotherSort() {
+        when(fileRepository.findPageByFilename(testUser.getId(), "", Limit.of(2)))
+                .thenReturn(List.of(fileRow(1, "a.txt", 1), fileRow(2, "b.txt", 1)));
+        String cursor = fileService.listFiles(testUser, FileSort.NAME, null, 1).nextCursor();
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () ->
+                fileService.listFiles(testUser, FileSort.ID, cursor, 1));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+    }
+
+    @Test
+    void searchFiles_ShouldMatchExtensionLiterally_AndContinueAfterTheLastName() {
+        Instant after = Instant.parse("2024-01-01T00:00:00Z");
+        when(fileRepository.searchPageByFilename(testUser.getId(), "%.tar\\_gz", 10, Long.MAX_VALUE, after, null, "",
+                Limit.of(2))).thenReturn(List.of(fileRow(1, "a.tar_gz", 20), fileRow(2, "b.tar_gz", 30)));
+        FileSearch search = new FileSearch(".tar_gz", FileSearch.Match.EXTENSION, 10L, null, after, null);
+
+        FilePage page = fileService.searchFiles(testUser, search, null, 1);
+
+        assertEquals(List.of(fileRow(1, "a.tar_gz", 20)), page.files());
+        fileService.searchFiles(testUser, search, page.nextCursor(), 1);
+        verify(fileRepository).searchPageByFilename(testUser.getId(), "%.tar\\_gz", 10, Long.MAX_VALUE, after, null,
+                "a.tar_gz", Limit.of(2));
+    }
+
+    @Test
+    void searchFiles_ShouldRejectEmptySizeRange() {
+        FileSearch search = new FileSearch("report", FileSearch.Match.PREFIX, 100L, 10L, null, null);
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () ->
+                fileService.searchFiles(testUser, search, null, 10));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        verifyNoInteractions(fileRepository);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private DeletedFile deletedFile(String filename, String blobDigest) {
+        return new DeletedFile() {
+            @Override
+            public int getId() {
+                return 5;
+            }
+
+            @Override
+            public int getUserId() {
+                return testUser.getId();
+            }
+
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+
+            @Override
+            public String getBlobDigest() {
+                return blobDigest;
+            }
+
+            @Override
+            public long getSize() {
+                return 10;
+            }
+        };
+    }
+
+    private FileListItem fileRow(int id, String filename, long size) {
+        return new FileListItem(id, filename, size, null, null);
+    }
+
+    private Path storedPath(File file) throws IOException {
+        return fileService.storedContent(file, testUser).getFile().toPath();
     }
-}
\ No newline at end of file
+}
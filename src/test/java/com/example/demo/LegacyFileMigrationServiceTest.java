@@ -0,0 +1,116 @@
+package com.example.demo;
+
+import com.example.demo.config.CompressionProperties;
+import com.example.demo.config.ContentCacheProperties;
+import com.example.demo.config.LegacyMigrationProperties;
+import com.example.demo.config.MetadataCacheProperties;
+import com.example.demo.config.StorageProperties;
+import com.example.demo.dto.LegacyFile;
+import com.example.demo.entities.Blob;
+import com.example.demo.repositories.BlobRepository;
+import com.example.demo.repositories.FileRepository;
+import com.example.demo.repositories.StorageIntentRepository;
+import com.example.demo.services.BlobContentCache;
+import com.example.demo.services.BlobStore;
+import com.example.demo.services.CompressionPolicy;
+import com.example.demo.services.FileMetadataCache;
+import com.example.demo.services.LegacyFileMigrationService;
+import com.example.demo.services.LocalStorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class LegacyFileMigrationServiceTest {
+    @TempDir
+    Path root;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private StorageIntentRepository intentRepository;
+
+    private LegacyFileMigrationService migrationService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        LocalStorageBackend storage = new LocalStorageBackend(new StorageProperties.Local(List.of(root), 64));
+        BlobStore blobStore = new BlobStore(blobRepository, new CompressionPolicy(
+                new CompressionProperties(false, DataSize.ofKilobytes(64), 0.8, 1)),
+                new BlobContentCache(new ContentCacheProperties(false, DataSize.ofKilobytes(256), DataSize.ofMegabytes(1)),
+                        new SimpleMeterRegistry()), storage,
+                TransactionOperations.withoutTransaction());
+        migrationService = new LegacyFileMigrationService(fileRepository, blobStore, storage,
+                new FileMetadataCache(new MetadataCacheProperties(100, Duration.ofMinutes(1)), new SimpleMeterRegistry()),
+                new LegacyMigrationProperties(true, 2, 2), intentRepository);
+        when(blobRepository.getReferenceById(anyString())).thenAnswer(invocation -> {
+            Blob blob = new Blob();
+            blob.setDigest(invocation.getArgument(0));
+            return blob;
+        });
+    }
+
+    @Test
+    void migrateFiles_ShouldMoveContentIntoBlobStoreInBatches() throws Exception {
+        Files.createDirectories(root.resolve("1"));
+        Files.writeString(root.resolve("1/a.txt"), "first");
+        Files.writeString(root.resolve("1/b.txt"), "second");
+        Files.writeString(root.resolve("1/c.txt"), "third");
+        when(fileRepository.findLegacyFiles(0, Limit.of(2)))
+                .thenReturn(List.of(new LegacyFile(1, 1, "a.txt"), new LegacyFile(2, 1, "b.txt")));
+        when(fileRepository.findLegacyFiles(2, Limit.of(2))).thenReturn(List.of(new LegacyFile(5, 1, "c.txt")));
+        when(fileRepository.attachBlob(anyInt(), anyString(), anyString())).thenReturn(1);
+
+        assertEquals(3, migrationService.migrateFiles());
+
+        ArgumentCaptor<String> digest = ArgumentCaptor.forClass(String.class);
+        verify(fileRepository).attachBlob(eq(5), eq("c.txt"), digest.capture());
+        assertEquals("third", Files.readString(root.resolve(BlobStore.key(blob(digest.getValue())))));
+        assertFalse(Files.exists(root.resolve("1/a.txt")));
+        assertFalse(Files.exists(root.resolve("1/c.txt")));
+        verify(fileRepository, never()).findLegacyFiles(5, Limit.of(2));
+    }
+
+    @Test
+    void migrateFiles_ShouldKeepLegacyCopy_WhenFileChangedMeanwhile() throws Exception {
+        Files.createDirectories(root.resolve("1"));
+        Files.writeString(root.resolve("1/renamed.txt"), "content");
+        when(fileRepository.findLegacyFiles(0, Limit.of(2)))
+                .thenReturn(List.of(new LegacyFile(1, 1, "renamed.txt"), new LegacyFile(2, 1, "missing.txt")));
+        when(blobRepository.deleteIfUnreferenced(anyString())).thenReturn(1);
+
+        assertEquals(0, migrationService.migrateFiles());
+
+        assertTrue(Files.exists(root.resolve("1/renamed.txt")));
+        verify(blobRepository).decrementRefCount(anyString());
+        verify(fileRepository, never()).attachBlob(eq(2), anyString(), anyString());
+        try (var blobs = Files.walk(root.resolve("blobs"))) {
+            assertTrue(blobs.filter(Files::isRegularFile).findAny().isEmpty());
+        }
+    }
+
+    private static Blob blob(String digest) {
+        Blob blob = new Blob();
+        blob.setDigest(digest);
+        return blob;
+    }
+}
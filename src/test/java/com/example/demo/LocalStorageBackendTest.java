@@ -0,0 +1,153 @@
+package com.example.demo;
+
+import com.example.demo.config.StorageProperties;
+import com.example.demo.services.LocalStorageBackend;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalStorageBackendTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void put_ShouldMoveFileIntoPlace_WithSingleRootLayout() throws IOException {
+        Path root = directory.resolve("root");
+        LocalStorageBackend storage = backend(root);
+        Path source = Files.writeString(directory.resolve("upload.tmp"), "content");
+
+        storage.put("blobs/ab/cd/abcd", source);
+
+        assertFalse(Files.exists(source));
+        assertEquals("content", Files.readString(root.resolve("blobs/ab/cd/abcd")));
+        Resource resource = storage.resource("blobs/ab/cd/abcd");
+        assertTrue(resource.exists());
+        assertEquals(7, resource.contentLength());
+        assertEquals(root.resolve("blobs/ab/cd/abcd").toAbsolutePath(), resource.getFile().toPath());
+    }
+
+    @Test
+    void putIfAbsent_ShouldKeepExistingContentAndSource() throws IOException {
+        Path root = directory.resolve("root");
+        LocalStorageBackend storage = backend(root);
+        Path first = Files.writeString(directory.resolve("first.tmp"), "first");
+        Path second = Files.writeString(directory.resolve("second.tmp"), "second");
+
+        assertTrue(storage.putIfAbsent("blobs/ab/cd/abcd", first));
+        assertFalse(storage.putIfAbsent("blobs/ab/cd/abcd", second));
+
+        Files.delete(first);
+        assertEquals("first", Files.readString(root.resolve("blobs/ab/cd/abcd")));
+        assertTrue(Files.exists(second));
+    }
+
+    @Test
+    void put_ShouldSpreadKeysAcrossRoots() throws IOException {
+        List<Path> roots = List.of(directory.resolve("disk1"), directory.resolve("disk2"), directory.resolve("disk3"));
+        LocalStorageBackend storage = backend(roots.toArray(Path[]::new));
+
+        for (int i = 0; i < 300; i++) {
+            storage.put("1/file-" + i, stream("content-" + i), 9);
+        }
+
+        for (Path root : roots) {
+            long count = countFiles(root);
+            assertTrue(count > 50, root + " holds only " + count + " of 300 files");
+        }
+        try (InputStream in = storage.get("1/file-42")) {
+            assertEquals("content-42", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void spoolFile_ShouldStayOnTheRoots_UnlessADirectoryIsConfigured() throws IOException {
+        List<Path> roots = List.of(directory.resolve("disk1"), directory.resolve("disk2"));
+        LocalStorageBackend storage = backend(roots.toArray(Path[]::new));
+
+        List<Path> spools = storage.spoolDirectories();
+        assertEquals(List.of(roots.get(0).resolve(".spool"), roots.get(1).resolve(".spool")), spools);
+        for (int i = 0; i < 100; i++) {
+            Path file = storage.spoolFile("blobs/upload-" + i);
+            assertTrue(spools.stream().anyMatch(spool -> file.startsWith(spool)), file + " is outside the spool");
+            assertEquals(file, storage.spoolFile("blobs/upload-" + i));
+        }
+        assertThrows(IllegalArgumentException.class, () -> storage.spoolFile("../escape"));
+
+        Path scratch = directory.resolve("scratch");
+        LocalStorageBackend configured = new LocalStorageBackend(new StorageProperties.Local(roots, 64), scratch);
+        assertEquals(scratch.resolve("uploads/1"), configured.spoolFile("uploads/1"));
+        assertEquals(List.of(scratch), configured.spoolDirectories());
+    }
+
+    @Test
+    void get_ShouldFindContentOnPreviousRoot_AfterRootIsAdded() throws IOException {
+        Path disk1 = directory.resolve("disk1");
+        LocalStorageBackend single = backend(disk1);
+        List<String> keys = IntStream.range(0, 50).mapToObj(i -> "7/file-" + i).toList();
+        for (String key : keys) {
+            single.put(key, stream(key), key.length());
+        }
+
+        LocalStorageBackend extended = backend(disk1, directory.resolve("disk2"));
+        for (String key : keys) {
+            try (InputStream in = extended.get(key)) {
+                assertEquals(key, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        extended.deleteAll(keys);
+        assertEquals(0, countFiles(disk1));
+    }
+
+    @Test
+    void rename_ShouldMoveContent_AndGetShouldFailForOldKey() throws IOException {
+        LocalStorageBackend storage = backend(directory.resolve("disk1"), directory.resolve("disk2"));
+        storage.put("3/old.txt", stream("renamed"), 7);
+
+        storage.rename("3/old.txt", "3/new.txt");
+
+        assertThrows(NoSuchFileException.class, () -> storage.get("3/old.txt"));
+        assertFalse(storage.resource("3/old.txt").exists());
+        try (InputStream in = storage.get("3/new.txt")) {
+            assertEquals("renamed", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        storage.delete("3/new.txt");
+        storage.delete("3/new.txt");
+        assertFalse(storage.resource("3/new.txt").exists());
+    }
+
+    @Test
+    void put_ShouldRejectKeysOutsideTheRoot() {
+        LocalStorageBackend storage = backend(directory.resolve("root"));
+
+        assertThrows(IllegalArgumentException.class, () -> storage.put("1/../../escape", stream("x"), 1));
+    }
+
+    private static LocalStorageBackend backend(Path... roots) {
+        return new LocalStorageBackend(new StorageProperties.Local(List.of(roots), 64));
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long countFiles(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return 0;
+        }
+        try (var files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+}
@@ -6,12 +6,15 @@ import com.example.demo.services.PasswordMigrationService;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.mockito.Mockito.*;
@@ -24,6 +27,9 @@ class PasswordMigrationServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
     @InjectMocks
     private PasswordMigrationService passwordMigrationService;
 
@@ -33,49 +39,63 @@ class PasswordMigrationServiceTest {
     }
 
     @Test
-    void migratePasswords_ShouldEncodeAndSavePasswords_WhenNotEncoded() {
-        User user1 = new User();
-        user1.setPassword("plainPassword1");
-
-        User user2 = new User();
-        user2.setPassword("$2a$10$encodedPassword2");
-
-        User user3 = new User();
-        user3.setPassword("plainPassword3");
+    void migratePasswords_ShouldEncodeAndBatchUpdatePasswords_WhenNotEncoded() throws Exception {
+        User user1 = user(1, "plainPassword1");
+        User user3 = user(3, "plainPassword3");
 
-        List<User> users = Arrays.asList(user1, user2, user3);
-
-        when(userRepository.findAll()).thenReturn(users);
+        when(userRepository.findUnencodedPasswords(eq(0), any(Limit.class))).thenReturn(List.of(user1, user3));
         when(passwordEncoder.encode("plainPassword1")).thenReturn("$2a$10$hashedPassword1");
         when(passwordEncoder.encode("plainPassword3")).thenReturn("$2a$10$hashedPassword3");
 
-        passwordMigrationService.migratePasswords();
-
-        verify(passwordEncoder, times(1)).encode("plainPassword1");
-        verify(passwordEncoder, times(1)).encode("plainPassword3");
-        verify(userRepository, times(1)).save(user1);
-        verify(userRepository, times(1)).save(user3);
-        verify(userRepository, never()).save(user2); // Already encoded, should not be saved
+        Assertions.assertEquals(2, passwordMigrationService.migratePasswords());
 
-        Assertions.assertEquals("$2a$10$hashedPassword1", user1.getPassword());
-        Assertions.assertEquals("$2a$10$hashedPassword3", user3.getPassword());
+        ArgumentCaptor<List<Object[]>> updates = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), updates.capture());
+        Assertions.assertArrayEquals(new Object[]{"$2a$10$hashedPassword1", 1, "plainPassword1"}, updates.getValue().get(0));
+        Assertions.assertArrayEquals(new Object[]{"$2a$10$hashedPassword3", 3, "plainPassword3"}, updates.getValue().get(1));
+        verify(userRepository, never()).save(any(User.class));
     }
 
     @Test
-    void migratePasswords_ShouldDoNothing_WhenAllPasswordsAreEncoded() {
-        User user1 = new User();
-        user1.setPassword("$2a$10$encodedPassword1");
+    void migratePasswords_ShouldPageByLastId() throws Exception {
+        List<User> firstPage = new ArrayList<>();
+        for (int id = 1; id <= 500; id++) {
+            firstPage.add(user(id, "plain" + id));
+        }
+        when(userRepository.findUnencodedPasswords(eq(0), any(Limit.class))).thenReturn(firstPage);
+        when(userRepository.findUnencodedPasswords(eq(500), any(Limit.class))).thenReturn(List.of(user(501, "plain501")));
+        when(passwordEncoder.encode(anyString())).thenReturn("$2a$10$hashed");
+
+        Assertions.assertEquals(501, passwordMigrationService.migratePasswords());
+
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), anyList());
+    }
 
-        User user2 = new User();
-        user2.setPassword("$2a$10$encodedPassword2");
+    @Test
+    void migratePasswords_ShouldDoNothing_WhenAllPasswordsAreEncoded() throws Exception {
+        when(userRepository.findUnencodedPasswords(eq(0), any(Limit.class))).thenReturn(List.of());
 
-        List<User> users = Arrays.asList(user1, user2);
+        Assertions.assertEquals(0, passwordMigrationService.migratePasswords());
 
-        when(userRepository.findAll()).thenReturn(users);
+        verify(passwordEncoder, never()).encode(anyString());
+        verifyNoInteractions(jdbcTemplate);
+    }
 
-        passwordMigrationService.migratePasswords();
+    @Test
+    void isEncoded_ShouldOnlyAcceptBcryptHashes() {
+        Assertions.assertTrue(PasswordMigrationService.isEncoded("$2a$10$hashed"));
+        Assertions.assertTrue(PasswordMigrationService.isEncoded("$2y$10$hashed"));
+        Assertions.assertTrue(PasswordMigrationService.isEncoded("{bcrypt}$2b$10$hashed"));
+        Assertions.assertFalse(PasswordMigrationService.isEncoded("{curly} plain text"));
+        Assertions.assertFalse(PasswordMigrationService.isEncoded("{noop}secret"));
+        Assertions.assertFalse(PasswordMigrationService.isEncoded("{bcrypt}secret"));
+        Assertions.assertFalse(PasswordMigrationService.isEncoded("$2x$not a hash"));
+    }
 
-        verify(passwordEncoder, never()).encode(anyString());
-        verify(userRepository, never()).save(any(User.class));
+    private User user(int id, String password) {
+        User user = new User();
+        user.setId(id);
+        user.setPassword(password);
+        return user;
     }
 }
@@ -0,0 +1,203 @@
+package com.example.demo;
+
+import com.example.demo.services.S3StorageBackend;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class S3StorageBackendTest {
+    private static final String BUCKET = "files";
+
+    @TempDir
+    Path directory;
+
+    private final InMemoryS3Client s3 = new InMemoryS3Client();
+    private final S3StorageBackend storage = new S3StorageBackend(s3, BUCKET);
+
+    @Test
+    void put_ShouldUploadFileAndRemoveSource() throws IOException {
+        Path source = Files.writeString(directory.resolve("upload.tmp"), "content");
+
+        storage.put("blobs/ab/cd/abcd", source);
+
+        assertFalse(Files.exists(source));
+        try (InputStream in = storage.get("blobs/ab/cd/abcd")) {
+            assertEquals("content", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        Resource resource = storage.resource("blobs/ab/cd/abcd");
+        assertTrue(resource.exists());
+        assertFalse(resource.isFile());
+        assertEquals(7, resource.contentLength());
+        assertEquals(s3.lastModified.toEpochMilli(), resource.lastModified());
+    }
+
+    @Test
+    void putIfAbsent_ShouldKeepExistingObjectAndSource() throws IOException {
+        Path first = Files.writeString(directory.resolve("first.tmp"), "first");
+        Path second = Files.writeString(directory.resolve("second.tmp"), "second");
+
+        assertTrue(storage.putIfAbsent("blobs/ab/cd/abcd", first));
+        assertFalse(storage.putIfAbsent("blobs/ab/cd/abcd", second));
+
+        assertTrue(Files.exists(first));
+        assertEquals(Map.of("blobs/ab/cd/abcd", "first"), s3.contents());
+    }
+
+    @Test
+    void get_ShouldFailWithNoSuchFile_WhenObjectIsMissing() throws IOException {
+        assertThrows(NoSuchFileException.class, () -> storage.get("1/missing.txt"));
+        assertFalse(storage.resource("1/missing.txt").exists());
+    }
+
+    @Test
+    void rename_ShouldCopyAndDeleteSource() throws IOException {
+        storage.put("1/old.txt", stream("renamed"), 7);
+
+        storage.rename("1/old.txt", "1/new.txt");
+
+        assertEquals(Map.of("1/new.txt", "renamed"), s3.contents());
+        assertThrows(NoSuchFileException.class, () -> storage.rename("1/old.txt", "1/other.txt"));
+    }
+
+    @Test
+    void deleteAll_ShouldSendBatchesOfAtMostThousandKeys() throws IOException {
+        List<String> keys = IntStream.range(0, 2500).mapToObj(i -> "1/file-" + i).toList();
+        for (String key : keys) {
+            storage.put(key, stream("x"), 1);
+        }
+        storage.delete("1/file-0");
+
+        storage.deleteAll(keys);
+
+        assertTrue(s3.contents().isEmpty());
+        assertEquals(3, s3.deleteObjectsCalls.get());
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Keeps the objects of a single bucket in memory, with the semantics S3 has for them.
+     */
+    private static final class InMemoryS3Client implements S3Client {
+        private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+        private final AtomicInteger deleteObjectsCalls = new AtomicInteger();
+        private final Instant lastModified = Instant.parse("2024-05-01T10:15:30Z");
+
+        Map<String, String> contents() {
+            Map<String, String> contents = new ConcurrentHashMap<>();
+            objects.forEach((key, value) -> contents.put(key, new String(value, StandardCharsets.UTF_8)));
+            return contents;
+        }
+
+        @Override
+        public PutObjectResponse putObject(PutObjectRequest request, RequestBody body) {
+            assertEquals(BUCKET, request.bucket());
+            try (InputStream in = body.contentStreamProvider().newStream()) {
+                byte[] content = in.readAllBytes();
+                assertEquals(request.contentLength(), content.length);
+                if ("*".equals(request.ifNoneMatch())) {
+                    if (objects.putIfAbsent(request.key(), content) != null) {
+                        throw S3Exception.builder().statusCode(412).message("At least one of the pre-conditions you specified did not hold").build();
+                    }
+                } else {
+                    objects.put(request.key(), content);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return PutObjectResponse.builder().build();
+        }
+
+        @Override
+        public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+            byte[] content = object(request.bucket(), request.key());
+            return new ResponseInputStream<>(GetObjectResponse.builder().contentLength((long) content.length).build(),
+                    AbortableInputStream.create(new ByteArrayInputStream(content)));
+        }
+
+        @Override
+        public HeadObjectResponse headObject(HeadObjectRequest request) {
+            byte[] content = object(request.bucket(), request.key());
+            return HeadObjectResponse.builder().contentLength((long) content.length).lastModified(lastModified).build();
+        }
+
+        @Override
+        public DeleteObjectResponse deleteObject(DeleteObjectRequest request) {
+            assertEquals(BUCKET, request.bucket());
+            objects.remove(request.key());
+            return DeleteObjectResponse.builder().build();
+        }
+
+        @Override
+        public DeleteObjectsResponse deleteObjects(DeleteObjectsRequest request) {
+            assertEquals(BUCKET, request.bucket());
+            assertTrue(request.delete().objects().size() <= 1000);
+            deleteObjectsCalls.incrementAndGet();
+            request.delete().objects().stream().map(ObjectIdentifier::key).forEach(objects::remove);
+            return DeleteObjectsResponse.builder().build();
+        }
+
+        @Override
+        public CopyObjectResponse copyObject(CopyObjectRequest request) {
+            assertEquals(BUCKET, request.destinationBucket());
+            objects.put(request.destinationKey(), object(request.sourceBucket(), request.sourceKey()));
+            return CopyObjectResponse.builder().build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "s3";
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private byte[] object(String bucket, String key) {
+            assertEquals(BUCKET, bucket);
+            byte[] content = objects.get(key);
+            if (content == null) {
+                throw NoSuchKeyException.builder().message("The specified key does not exist.").statusCode(404).build();
+            }
+            return content;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.demo;
+
+import com.example.demo.config.SecretRedactingJsonCustomizer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SecretRedactingJsonCustomizerTest {
+
+    @Test
+    void redact_MasksTokensAndPasswords() {
+        assertEquals("auth-token: Bearer [REDACTED]",
+                SecretRedactingJsonCustomizer.redact("auth-token: Bearer 0f8fad5b-d9cb-469f-a165-70867728950e"));
+        assertEquals("Login: user1, password=[REDACTED]",
+                SecretRedactingJsonCustomizer.redact("Login: user1, password=hunter2"));
+        assertEquals("{\"login\": \"user1\", \"password\": \"[REDACTED]\"}",
+                SecretRedactingJsonCustomizer.redact("{\"login\": \"user1\", \"password\": \"hunter2\"}"));
+    }
+
+    @Test
+    void redact_KeepsOrdinaryMessages() {
+        String message = "Purging expired upload session 42, 3 tokens active";
+        assertEquals(message, SecretRedactingJsonCustomizer.redact(message));
+    }
+}
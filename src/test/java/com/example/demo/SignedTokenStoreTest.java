@@ -0,0 +1,108 @@
+package com.example.demo;
+
+import com.example.demo.config.TokenProperties;
+import com.example.demo.entities.User;
+import com.example.demo.repositories.UserRepository;
+import com.example.demo.services.SignedTokenStore;
+import com.example.demo.services.TokenRevocationStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SignedTokenStoreTest {
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+    private static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Mock
+    private TokenRevocationStore revocationStore;
+
+    @Mock
+    private UserRepository userRepository;
+
+    private SignedTokenStore tokenStore;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        tokenStore = signedTokenStore(SECRET, Clock.fixed(NOW, ZoneOffset.UTC));
+        user = new User();
+        user.setId(5);
+        // only the tests that resolve a valid token ask for the reference
+        lenient().when(userRepository.getReferenceById(5)).thenReturn(user);
+    }
+
+    @Test
+    void resolve_IssuedToken_ReturnsUser() {
+        String token = tokenStore.issue(user);
+
+        User resolved = tokenStore.resolve(token);
+
+        assertSame(user, resolved);
+        verify(userRepository).getReferenceById(5);
+        verifyNoMoreInteractions(userRepository);
+    }
+
+    @Test
+    void resolve_TokenFromAnotherInstance_ReturnsUser() {
+        String token = tokenStore.issue(user);
+
+        assertNotNull(signedTokenStore(SECRET, Clock.fixed(NOW, ZoneOffset.UTC)).resolve(token));
+    }
+
+    @Test
+    void resolve_TamperedOrForeignToken_ReturnsNull() {
+        String token = tokenStore.issue(user);
+        String tampered = "X" + token.substring(1);
+
+        assertNull(tokenStore.resolve(tampered));
+        assertNull(tokenStore.resolve("not-a-token"));
+        assertNull(signedTokenStore("another-secret-another-secret-xx", Clock.fixed(NOW, ZoneOffset.UTC)).resolve(token));
+    }
+
+    @Test
+    void resolve_ExpiredToken_ReturnsNull() {
+        String token = tokenStore.issue(user);
+
+        Clock later = Clock.fixed(NOW.plus(Duration.ofHours(13)), ZoneOffset.UTC);
+        assertNull(signedTokenStore(SECRET, later).resolve(token));
+    }
+
+    @Test
+    void revoke_ValidToken_AddsItToRevocationStore() {
+        String token = tokenStore.issue(user);
+
+        assertNotNull(tokenStore.revoke(token));
+        verify(revocationStore).revoke(anyString(), eq(NOW.plus(Duration.ofHours(12))));
+
+        when(revocationStore.isRevoked(anyString())).thenReturn(true);
+        assertNull(tokenStore.resolve(token));
+    }
+
+    @Test
+    void constructor_ShortSecret_Fails() {
+        assertThrows(IllegalStateException.class, () -> signedTokenStore("short", Clock.systemUTC()));
+    }
+
+    private SignedTokenStore signedTokenStore(String secret, Clock clock) {
+        TokenProperties tokenProperties = new TokenProperties(TokenProperties.Mode.SIGNED, secret,
+                Duration.ofHours(12), Duration.ofMinutes(30), 1000);
+        return new SignedTokenStore(tokenProperties, revocationStore, userRepository, clock);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.demo;
+
+import com.example.demo.config.CompressionProperties;
+import com.example.demo.config.ContentCacheProperties;
+import com.example.demo.config.JournalProperties;
+import com.example.demo.config.StorageProperties;
+import com.example.demo.entities.Blob;
+import com.example.demo.entities.StorageIntent;
+import com.example.demo.repositories.BlobRepository;
+import com.example.demo.repositories.StorageIntentRepository;
+import com.example.demo.repositories.UserRepository;
+import com.example.demo.services.BlobContentCache;
+import com.example.demo.services.BlobStore;
+import com.example.demo.services.CompressionPolicy;
+import com.example.demo.services.LocalStorageBackend;
+import com.example.demo.services.StorageReconciler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StorageReconcilerTest {
+    private static final String DIGEST = "ab".repeat(32);
+
+    @TempDir
+    Path root;
+
+    @Mock
+    private StorageIntentRepository intentRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    private StorageReconciler reconciler;
+
+    private LocalStorageBackend storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        storage = new LocalStorageBackend(new StorageProperties.Local(List.of(root), 64));
+        BlobStore blobStore = new BlobStore(blobRepository, new CompressionPolicy(
+                new CompressionProperties(false, DataSize.ofKilobytes(64), 0.8, 1)),
+                new BlobContentCache(new ContentCacheProperties(false, DataSize.ofKilobytes(256), DataSize.ofMegabytes(1)),
+                        new SimpleMeterRegistry()), storage,
+                TransactionOperations.withoutTransaction());
+        reconciler = new StorageReconciler(intentRepository, userRepository, blobStore,
+                new JournalProperties(Duration.ofHours(1), 2));
+        storage.put(BlobStore.key(blob(DIGEST)), new ByteArrayInputStream(new byte[]{1, 2, 3}), 3);
+    }
+
+    @Test
+    void reconcile_ShouldDeleteContentWithoutRow_AndRecountUsage() throws IOException {
+        // an upload that stored its content and stopped before the blob row was written
+        when(intentRepository.findStale(any(Instant.class), eq(Limit.of(2))))
+                .thenReturn(List.of(intent(1L, 7, DIGEST), intent(2L, 7, null)), List.of());
+        when(blobRepository.recount(DIGEST)).thenReturn(0);
+
+        assertEquals(2, reconciler.reconcile());
+
+        assertFalse(Files.exists(root.resolve(BlobStore.key(blob(DIGEST)))));
+        verify(userRepository).recountUsedBytes(eq(7), any(Instant.class));
+        verify(intentRepository).deleteAllByIdInBatch(List.of(1L, 2L));
+        verify(intentRepository, times(2)).findStale(any(Instant.class), eq(Limit.of(2)));
+    }
+
+    @Test
+    void reconcile_ShouldKeepBlobAndEntry_WhileAnOperationOnTheDigestIsRunning() throws IOException {
+        when(intentRepository.findStale(any(Instant.class), eq(Limit.of(2))))
+                .thenReturn(List.of(intent(1L, 7, DIGEST)));
+        when(intentRepository.existsByDigestAndCreatedAtGreaterThanEqual(eq(DIGEST), any(Instant.class))).thenReturn(true);
+
+        assertEquals(0, reconciler.reconcile());
+
+        assertTrue(Files.exists(root.resolve(BlobStore.key(blob(DIGEST)))));
+        verify(blobRepository, never()).recount(anyString());
+        verify(intentRepository).deleteAllByIdInBatch(List.of());
+    }
+
+    private static Blob blob(String digest) {
+        Blob blob = new Blob();
+        blob.setDigest(digest);
+        return blob;
+    }
+
+    private static StorageIntent intent(long id, Integer userId, String digest) {
+        StorageIntent intent = new StorageIntent();
+        intent.setId(id);
+        intent.setOperation(UUID.randomUUID());
+        intent.setUserId(userId);
+        intent.setDigest(digest);
+        intent.setCreatedAt(Instant.now().minus(Duration.ofHours(2)));
+        return intent;
+    }
+}